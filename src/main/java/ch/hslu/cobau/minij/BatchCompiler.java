@@ -0,0 +1,272 @@
+package ch.hslu.cobau.minij;
+
+import org.antlr.v4.runtime.CharStream;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiles many sources in one JVM. Every file is an independent task on a
+ * fork-join pool and ends up as {@code <name>.asm} in the output directory,
+ * so no two inputs may have the same name without extension.
+ */
+public class BatchCompiler {
+
+    public static class FileResult {
+
+        private final Path input;
+        private final Path output;
+        private final int exitStatus;
+        private final List<String> messages;
+
+        FileResult(Path input, Path output, int exitStatus, List<String> messages) {
+
+            this.input = input;
+            this.output = output;
+            this.exitStatus = exitStatus;
+            this.messages = messages;
+        }
+
+        public Path getInput() {
+
+            return input;
+        }
+
+        public Path getOutput() {
+
+            return output;
+        }
+
+        public int getExitStatus() {
+
+            return exitStatus;
+        }
+
+        public List<String> getMessages() {
+
+            return messages;
+        }
+    }
+
+    private final Path outputDirectory;
+    private final int parallelism;
+    private DiskCache cache;
+    // shared by the files of the batch, unless each file has its functions
+    // in the disk cache
+    private final FunctionCache functionCache = new FunctionCache(FunctionCache.DEFAULT_MAX_ENTRIES);
+    private final AtomicLong functionHits = new AtomicLong();
+    private final AtomicLong functionMisses = new AtomicLong();
+    private boolean fastLexer = false;
+    private boolean directParser = false;
+    private boolean generatedParser = false;
+    private boolean lazyBodies = false;
+
+    public BatchCompiler(Path outputDirectory, int parallelism) {
+
+        this.outputDirectory = outputDirectory;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Reuses the output of unchanged sources and functions from earlier runs,
+     * may be null.
+     */
+    public void setCache(DiskCache cache) {
+
+        this.cache = cache;
+    }
+
+    public void setFastLexer(boolean fastLexer) {
+
+        this.fastLexer = fastLexer;
+    }
+
+    public void setDirectParser(boolean directParser) {
+
+        this.directParser = directParser;
+    }
+
+    public void setGeneratedParser(boolean generatedParser) {
+
+        this.generatedParser = generatedParser;
+    }
+
+    public void setLazyBodies(boolean lazyBodies) {
+
+        this.lazyBodies = lazyBodies;
+    }
+
+    /**
+     * Compiles all inputs, prints the diagnostics of each failed file and a
+     * throughput summary to stderr.
+     *
+     * @return 0 if every file compiled, 1 otherwise, 2 if two inputs would
+     *         be written to the same output file
+     */
+    public int run(List<Path> inputs) throws IOException {
+
+        Files.createDirectories(outputDirectory);
+
+        long start = System.nanoTime();
+        List<FileResult> results;
+        try {
+            results = compileAll(inputs);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 2;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int failed = 0;
+        for (FileResult result : results) {
+
+            if (result.getExitStatus() != 0) {
+
+                failed++;
+            }
+
+            // a file that compiled can still have lexer errors
+            for (String message : result.getMessages()) {
+
+                System.err.println(result.getInput() + ": " + message);
+            }
+        }
+
+        double seconds = elapsed / 1e9;
+        System.err.printf("compiled %d files (%d failed) in %.3f s, %.1f files/s on %d threads%n",
+                results.size(), failed, seconds, results.size() / seconds, parallelism);
+        System.err.println("function cache: " + (functionHits.get() + functionCache.getHits()) + " hits, "
+                + (functionMisses.get() + functionCache.getMisses()) + " misses");
+        System.err.println(MiniJCompiler.parseStatistics());
+
+        return failed == 0 ? 0 : 1;
+    }
+
+    /**
+     * @throws IllegalArgumentException if two inputs have the same name
+     *         without extension, nothing is compiled then
+     */
+    public List<FileResult> compileAll(List<Path> inputs) {
+
+        Map<String, Path> outputs = new HashMap<>();
+        for (Path input : inputs) {
+
+            Path other = outputs.putIfAbsent(outputName(input), input);
+            if (other != null) {
+
+                throw new IllegalArgumentException(other + " and " + input + " would both be compiled to "
+                        + outputDirectory.resolve(outputName(input)));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<FileResult>> tasks = new ArrayList<>();
+            for (Path input : inputs) {
+
+                tasks.add(pool.submit(() -> compile(input)));
+            }
+
+            List<FileResult> results = new ArrayList<>();
+            for (ForkJoinTask<FileResult> task : tasks) {
+
+                results.add(task.join());
+            }
+
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private FileResult compile(Path input) {
+
+        Path output = outputDirectory.resolve(outputName(input));
+        try {
+            CharStream charStream;
+            String key = null;
+            if (cache != null) {
+
+                byte[] source = Files.readAllBytes(input);
+                key = cache.key(source, MiniJCompiler.cacheOptions(lazyBodies));
+                try (FileChannel out = FileChannel.open(output,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+                    if (cache.writeTo(key, out)) {
+
+                        return new FileResult(input, output, 0, List.of());
+                    }
+                }
+                charStream = MappedCharStream.wrap(source, input.toString());
+            }
+            else {
+
+                charStream = MappedCharStream.open(input);
+            }
+
+            CompilationContext context = new CompilationContext();
+            context.setFastLexer(fastLexer);
+            context.setDirectParser(directParser);
+            context.setGeneratedParser(generatedParser);
+            context.setLazyBodies(lazyBodies);
+            FunctionCache functions = cache != null ? FunctionCache.load(cache, input) : functionCache;
+            context.setFunctionCache(functions);
+            CompilationResult result = MiniJCompiler.compile(charStream, context);
+            if (functions != functionCache) {
+
+                functionHits.addAndGet(functions.getHits());
+                functionMisses.addAndGet(functions.getMisses());
+            }
+
+            List<String> messages = new ArrayList<>(result.getSyntaxErrors());
+            messages.addAll(result.getErrors());
+
+            if (result.isSuccess()) {
+
+                MiniJCompiler.writeCode(result.getCode(), output);
+                if (cache != null && !result.hasLexerErrors()) {
+
+                    cache.store(key, result.getCode());
+                    functions.store(cache, input);
+                }
+            }
+            else {
+
+                // an older output must not pass for the result of this run
+                Files.deleteIfExists(output);
+            }
+
+            return new FileResult(input, output, result.getExitStatus(), messages);
+        } catch (IOException e) {
+
+            try {
+                Files.deleteIfExists(output);
+            } catch (IOException ignored) {
+                // the failure is reported already
+            }
+            return new FileResult(input, output, 1, List.of(e.toString()));
+        }
+    }
+
+    private static String outputName(Path input) {
+
+        String name = input.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+
+            name = name.substring(0, dot);
+        }
+
+        return name + ".asm";
+    }
+}
@@ -0,0 +1,149 @@
+package ch.hslu.cobau.minij;
+
+import ch.hslu.cobau.minij.ast.BaseAstVisitor;
+import ch.hslu.cobau.minij.ast.entity.Declaration;
+import ch.hslu.cobau.minij.ast.entity.Function;
+import ch.hslu.cobau.minij.ast.entity.Struct;
+import ch.hslu.cobau.minij.ast.entity.Unit;
+import ch.hslu.cobau.minij.ast.expression.FieldAccess;
+import ch.hslu.cobau.minij.ast.expression.VariableAccess;
+import ch.hslu.cobau.minij.ast.statement.DeclarationStatement;
+import ch.hslu.cobau.minij.ast.statement.Statement;
+import ch.hslu.cobau.minij.ast.type.RecordType;
+import ch.hslu.cobau.minij.ast.type.Type;
+
+import java.util.List;
+
+/**
+ * Resolves every name once, right after the declarations have been collected.
+ * Each declaration gets a {@link Symbol} with its label or frame slot and
+ * every variable access and field access refers to its symbol directly, so
+ * the later passes never look names up again. Calls are resolved by the type
+ * checks, which need the argument types. Names that cannot
+ * be resolved stay unbound and are reported by the type checks. Before
+ * that, every record gets its {@link RecordLayout}.
+ */
+public class BindingVisitor extends BaseAstVisitor {
+
+    private static final int MAX_PASS_REGISTER = 6;
+    private static final int REFERENCE_SIZE = 8;
+
+    private final SymbolTable symbolTable;
+
+    public BindingVisitor(SymbolTable symbolTable) {
+
+        this.symbolTable = symbolTable;
+    }
+
+    @Override
+    public void visit(Unit program) {
+
+        program.getStructs().forEach(this::layout);
+
+        for (Declaration global : program.getGlobals()) {
+
+            symbolTable.bind(global, new Symbol(global.getIdentifier(), global.getType(), Symbol.Kind.GLOBAL, 0));
+        }
+
+        program.getFunctions().forEach(function -> function.accept(this));
+    }
+
+    // a record field holds a reference, like a string or an array field, so
+    // a record may refer to itself and no record depends on another's layout
+    private void layout(Struct record) {
+
+        List<Declaration> fields = record.getDeclarations();
+        int[] sizes = new int[fields.size()];
+        int[] alignments = new int[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+
+            Type type = fields.get(i).getType();
+            sizes[i] = type instanceof RecordType || type.size() <= 0 ? REFERENCE_SIZE : type.size();
+            alignments[i] = sizes[i];
+        }
+
+        symbolTable.setLayout(record, new RecordLayout(record, sizes, alignments));
+    }
+
+    @Override
+    public void visit(Function function) {
+
+        // the code of a cached function is not generated again, the code of
+        // an unreached one not at all
+        if (function.isBodySkipped() || symbolTable.getCachedCode(function) != null) {
+
+            return;
+        }
+
+        // same layout the code generator has always used: the first six
+        // parameters are spilled below RBP, the others are above it, then
+        // the locals follow in declaration order
+        int rbpOffset = 0;
+        int stackOffset = -8;
+
+        List<Declaration> parameters = function.getFormalParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+
+            Declaration parameter = parameters.get(i);
+            int size = parameter.getType().size();
+            int offset;
+            if (i < MAX_PASS_REGISTER) {
+
+                rbpOffset += size;
+                offset = rbpOffset;
+            }
+            else {
+
+                stackOffset -= size;
+                offset = stackOffset;
+            }
+
+            symbolTable.bind(parameter, new Symbol(parameter.getIdentifier(), parameter.getType(), Symbol.Kind.PARAMETER, offset));
+        }
+
+        for (Statement statement : function.getStatements()) {
+
+            if (statement instanceof DeclarationStatement d) {
+
+                Declaration local = d.getDeclaration();
+                rbpOffset += local.getType().size();
+                symbolTable.bind(local, new Symbol(local.getIdentifier(), local.getType(), Symbol.Kind.LOCAL, rbpOffset));
+            }
+        }
+
+        symbolTable.setFrameSize(function, rbpOffset);
+        function.visitChildren(this);
+    }
+
+    @Override
+    public void visit(VariableAccess variable) {
+
+        Declaration declaration = symbolTable.getDeclaration(variable);
+        if (declaration != null) {
+
+            variable.setSymbol(symbolTable.getSymbol(declaration));
+        }
+    }
+
+    @Override
+    public void visit(FieldAccess fieldAccess) {
+
+        fieldAccess.visitChildren(this);
+
+        if (fieldAccess.getBase() instanceof VariableAccess base
+                && base.getSymbol() != null
+                && base.getSymbol().getType() instanceof RecordType recordType) {
+
+            RecordLayout layout = symbolTable.getLayout(recordType.getIdentifier());
+            if (layout != null) {
+
+                Declaration field = layout.getField(fieldAccess.getField());
+                if (field != null) {
+
+                    int offset = layout.getOffset(field.getIdentifier());
+                    fieldAccess.setSymbol(new Symbol(field.getIdentifier(), field.getType(), Symbol.Kind.FIELD, offset));
+                }
+            }
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package ch.hslu.cobau.minij;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
 public class Code {
 
-    String header = "";
-    String data = "\n";
-    String bss = "\n";
-    String text = "\n";
+    Section header;
+    Section data;
+    Section bss;
+    Section text;
 
     boolean print = false;
     boolean lineNumbers = false;
@@ -13,19 +20,32 @@ public class Code {
 
     public Code() {
 
+        this("\n");
+    }
+
+    private Code(String sectionStart) {
+
+        header = new Section();
+        data = new Section(sectionStart);
+        bss = new Section(sectionStart);
+        text = new Section(sectionStart);
+    }
+
+    public static Code fragment() {
 
+        return new Code("");
     }
 
     public void addSections() {
 
 
-        header += "DEFAULT REL\n";
-        header += "bits 64\n";
+        header.append("DEFAULT REL\n");
+        header.append("bits 64\n");
 
-        data += "section .data\n";
-        bss += "section .bss\n";
-        bss += "alignb 8\n";
-        text += "section .text\n";
+        data.append("section .data\n");
+        bss.append("section .bss\n");
+        bss.append("alignb 8\n");
+        text.append("section .text\n");
     }
 
     public void togglePrint() {
@@ -35,14 +55,14 @@ public class Code {
 
     public Code add(String s) {
 
-        text += s;
+        text.append(s);
 
         return this;
     }
 
     public Code comma() {
 
-        text += ", ";
+        text.append(", ");
 
         return this;
     }
@@ -58,26 +78,26 @@ public class Code {
 
     public Code newLine() {
 
-        text += putLineNumber();
+        text.append(putLineNumber());
 
         return this;
     }
 
     public Code comment(String s) {
 
-        text += "; " + s;
+        text.append("; ").append(s);
 
         return this;
     }
 
     public void addExternFunction(String identifier) {
 
-        header += "extern " + identifier + "\n";
+        header.append("extern ").append(identifier).append("\n");
     }
 
     public void addGlobalFunction(String identifier) {
 
-        header += "global " + identifier + "\n";
+        header.append("global ").append(identifier).append("\n");
     }
 
     public void addFunctionLabel(String identifier) {
@@ -85,7 +105,7 @@ public class Code {
         if (print)
             System.out.println(identifier + ":");
 
-        text += identifier + ":\n";
+        text.append(identifier).append(":\n");
     }
 
     public Code addInstruction(Instruction instruction) {
@@ -93,7 +113,7 @@ public class Code {
         if (print)
             System.out.println(instruction.mnemonic);
 
-        text += instruction.mnemonic;
+        text.append(instruction.mnemonic);
 
         return this;
     }
@@ -103,7 +123,7 @@ public class Code {
         if (print)
             System.out.println(instruction.mnemonic + word);
 
-        text += instruction.mnemonic + word;
+        text.append(instruction.mnemonic).append(word);
 
         return this;
     }
@@ -114,7 +134,7 @@ public class Code {
         if (print)
             System.out.println(instruction.mnemonic + word + ", " + word1);
 
-        text += instruction.mnemonic + word + ", " + word1;
+        text.append(instruction.mnemonic).append(word).append(", ").append(word1);
 
         return this;
     }
@@ -124,39 +144,80 @@ public class Code {
         if (print)
             System.out.println(instruction);
 
-        text += instruction;
+        text.append(instruction);
 
         return this;
     }
 
     public void addData(String identifier, String type, int size) {
 
-        data += "\t" + identifier + " " + type + " " + size + "\n";
+        data.append("\t" + identifier + " " + type + " " + size + "\n");
     }
 
     public void addLabel(String label) {
 
-        text += label + ":\n";
+        text.append(label).append(":\n");
+    }
+
+    public Section.Placeholder getInsertPoint() {
+
+        return text.placeholder();
+    }
+
+    public void addCode(Code code, Section.Placeholder insertPoint) {
+
+        insertPoint.fill(code.text);
     }
 
-    public int getInsertPoint() {
+    public Code append(Code code) {
+
+        header.append(code.header);
+        data.append(code.data);
+        bss.append(code.bss);
+        text.append(code.text);
 
-        return text.length();
+        return this;
     }
 
-    public void addCode(Code code, int insertPoint) {
+    /**
+     * Writes the sections one by one with their lengths, so that
+     * {@link #readSectionsFrom} can restore them, e.g. for a fragment kept
+     * in the {@link DiskCache}.
+     */
+    void writeSectionsTo(DataOutputStream out) throws IOException {
 
+        for (Section section : List.of(header, data, bss, text)) {
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            section.writeTo(bytes);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+    }
 
-        String patched = text.substring(0, insertPoint);
-        patched += "\t" + code.text;
-        patched += "\t" + text.substring(insertPoint + 1);
+    static Code readSectionsFrom(DataInputStream in) throws IOException {
 
-        text = patched;
+        Code code = fragment();
+        for (Section section : List.of(code.header, code.data, code.bss, code.text)) {
+
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            section.append(bytes, 0, bytes.length);
+        }
+
+        return code;
     }
 
+    public void writeTo(WritableByteChannel channel) throws IOException {
+
+        header.writeTo(channel);
+        data.writeTo(channel);
+        bss.writeTo(channel);
+        text.writeTo(channel);
+    }
 
     @Override
     public String toString() {
-        return header + data + bss + text;
+        return header.toString() + data + bss + text;
     }
 }
@@ -12,22 +12,27 @@ import ch.hslu.cobau.minij.ast.type.*;
 import org.antlr.v4.codegen.model.decl.Decl;
 
 import javax.swing.plaf.basic.BasicInternalFrameTitlePane;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class CodeGenerator implements AstVisitor {
 
     private static final int MAX_PASS_REGISTER = 6;
+    private static final int PUSH_SIZE = 8;
     private static final String LABEL = ".LABEL";
 
-    Code code = new Code();
-    Code patch;
+    Code code;
     SymbolTable symbolTable;
+    RegisterState registers;
+    Frame frame;
     Scope currentScope;
+    ForkJoinPool pool;
 
 
     boolean isMain = false;
-    int rbpOffset = 0;
     int stackOffset = -8;
     int labelCount = 0;
 
@@ -59,8 +64,17 @@ public class CodeGenerator implements AstVisitor {
 
     public CodeGenerator(SymbolTable symbolTable) {
 
+        this(symbolTable, ForkJoinPool.commonPool());
+    }
+
+    public CodeGenerator(SymbolTable symbolTable, ForkJoinPool pool) {
+
+        code = new Code();
         code.addSections();
         this.symbolTable = symbolTable;
+        this.pool = pool;
+        registers = symbolTable.getContext().getRegisters();
+        frame = new Frame(symbolTable);
         currentScope = symbolTable.getGlobalScope();
 
         for (String s : BUILT_INS) {
@@ -73,10 +87,67 @@ public class CodeGenerator implements AstVisitor {
     }
 
 
+    private CodeGenerator(CodeGenerator unitGenerator) {
+
+        code = Code.fragment();
+        symbolTable = unitGenerator.symbolTable;
+        registers = new RegisterState();
+        frame = new Frame(symbolTable);
+        currentScope = symbolTable.getGlobalScope();
+    }
+
+    private static Code generate(CodeGenerator unitGenerator, Function function) {
+
+        CodeGenerator functionGenerator = new CodeGenerator(unitGenerator);
+        function.accept(functionGenerator);
+
+        return functionGenerator.code;
+    }
+
+    private static Code generate(CodeGenerator unitGenerator, Function function, FunctionCache cache) {
+
+        // looked up by the first pass
+        Code code = unitGenerator.symbolTable.getCachedCode(function);
+        if (code == null) {
+
+            code = generate(unitGenerator, function);
+            cache.put(unitGenerator.symbolTable.getFingerprint(function), code);
+        }
+
+        return code;
+    }
+
     @Override
     public void visit(Unit program) {
 
-        program.visitChildren(this);
+        // globals first: functions only read the global symbols afterwards
+        program.getGlobals().forEach(global -> global.accept(this));
+
+        // every function is generated into its own fragment, the fragments
+        // are appended in source order so the output does not depend on scheduling
+        FunctionCache cache = symbolTable.getContext().getFunctionCache();
+
+        List<ForkJoinTask<Code>> functions = new ArrayList<>();
+        for (Function function : program.getFunctions()) {
+
+            if (function.isBodySkipped()) {
+
+                continue;
+            }
+            else if (cache == null) {
+
+                functions.add(pool.submit(() -> generate(this, function)));
+            }
+            else {
+
+                functions.add(pool.submit(() -> generate(this, function, cache)));
+            }
+        }
+
+        for (ForkJoinTask<Code> function : functions) {
+
+            code.append(function.join());
+        }
     }
 
     @Override
@@ -85,7 +156,6 @@ public class CodeGenerator implements AstVisitor {
 
         currentScope = symbolTable.getScope(function);
 
-
         if (Objects.equals(function.getIdentifier(), "main")) {
 
             code.addFunctionLabel("_start");
@@ -105,35 +175,21 @@ public class CodeGenerator implements AstVisitor {
             return;
         }
 
-        List<Declaration> declarations = symbolTable.getDeclarationsInScope(currentScope);
-        List<Declaration> parameters = function.getFormalParameters();
-
-        int sub = 0;
-        int paramCount = 0;
-        for (Declaration d : declarations) {
-
-            Type type = d.getType();
-            if (parameters.contains(d) && paramCount < MAX_PASS_REGISTER) {
-                sub += type.size();
-                paramCount++;
-            }
-            else if (!parameters.contains(d)) {
-
-                sub += type.size();
-            }
-        }
+        // the frame is reserved in a slot behind 'mov rbp, rsp' that is
+        // filled once the body has been generated
+        Section.Placeholder prologue = code.getInsertPoint();
 
+        function.visitChildren(this);
 
-        if (sub > 0) {
+        int frameSize = symbolTable.getFrameSize(function);
+        if (frameSize > 0) {
 
-            code.addInstruction(Instruction.SUB, Register.RSP.name, Integer.toString(sub)).newLine();
+            Code frame = Code.fragment();
+            frame.addInstruction(Instruction.SUB, Register.RSP.name, Integer.toString(frameSize)).newLine();
+            code.addCode(frame, prologue);
         }
 
-        function.visitChildren(this);
-
-        rbpOffset = 0;
         stackOffset = -8;
-        symbolTable.clear(currentScope);
         labelCount = 0;
 
         if (!isMain) {
@@ -161,11 +217,10 @@ public class CodeGenerator implements AstVisitor {
     public void visit(Declaration declaration) {
 
         Type type = declaration.getType();
-        Symbol symbol = new Symbol(declaration.getIdentifier(), declaration.getType());
+        Symbol symbol = symbolTable.getSymbol(declaration);
 
         if (symbolTable.isGlobalScope(currentScope)) {
 
-            symbolTable.add(symbol, currentScope);
             code.addData(declaration.getIdentifier(), type.dataAllocation(), type.size());
         }
         else {
@@ -173,29 +228,19 @@ public class CodeGenerator implements AstVisitor {
             Function function = symbolTable.getFunctionOfScope(currentScope);
             List<Declaration> parameters = function.getFormalParameters();
 
-            if (parameters.contains(declaration)) {
+            if (symbol.getKind() == Symbol.Kind.PARAMETER) {
                 int i = 0;
                 for (; i < parameters.size(); i++) {
 
-                    if (parameters.get(i).equals(declaration)) {
+                    if (parameters.get(i) == declaration) {
 
                         break;
                     }
                 }
                 if (i < MAX_PASS_REGISTER) {
 
-                    rbpOffset += type.size();
-                    symbol.setRegister(Register.RBP, rbpOffset);
                     code.addInstruction(Instruction.MOV, symbol.getRegisterAsString(true), Register.values()[i].name).newLine();
                 }
-                else {
-
-                    stackOffset -= type.size();
-                    symbol.setRegister(Register.RBP, stackOffset);
-
-                }
-
-                symbolTable.add(symbol, currentScope);
             }
         }
 
@@ -225,7 +270,7 @@ public class CodeGenerator implements AstVisitor {
 
             if (b.getLeft() instanceof BinaryExpression l && b.getRight() instanceof BinaryExpression r) {
 
-                Register result = Register.getFreeRegister();
+                Register result = registers.getFreeRegister();
                 l.accept(this);
                 code.addInstruction(Instruction.CMP, result.name, "1").newLine();
 
@@ -260,7 +305,7 @@ public class CodeGenerator implements AstVisitor {
         }
         else if (condition instanceof VariableAccess v) {
 
-            Register dst = Register.getFreeRegister();
+            Register dst = registers.getFreeRegister();
             code.addInstruction(Instruction.MOV, dst.name).comma();
             v.accept(this);
             code.newLine().addInstruction(Instruction.CMP, "QWORD " + dst.name, "1").newLine();
@@ -325,7 +370,7 @@ public class CodeGenerator implements AstVisitor {
             code.addLabel(loopLabel);
             whileStatement.visitChildrenWithoutExpression(this);
 
-            Register dst = Register.getFreeRegister();
+            Register dst = registers.getFreeRegister();
             code.addLabel(conditionLabel);
             code.addInstruction(Instruction.MOV, dst.name).comma();
             v.accept(this);
@@ -356,7 +401,7 @@ public class CodeGenerator implements AstVisitor {
 
 
         if (isMain) {
-            String exitCode = Expression.evaluateAsString(returnStatement.getExpression(), symbolTable);
+            String exitCode = Expression.evaluateAsString(returnStatement.getExpression(), frame);
             code.addInstruction(Instruction.MOV, "QWORD " + Register.RDI.name, exitCode).newLine();
             code.addInstruction(Instruction.CALL, "_exit").newLine();
         }
@@ -364,7 +409,7 @@ public class CodeGenerator implements AstVisitor {
 
             code.addInstruction(Instruction.MOV,
                                     Register.RAX.name,
-                                    Expression.evaluateAsString(returnStatement.getExpression(), symbolTable)).newLine();
+                                    Expression.evaluateAsString(returnStatement.getExpression(), frame)).newLine();
 
             code.addInstruction(Instruction.MOV, Register.RSP.name, Register.RBP.name).newLine();
             code.addInstruction(Instruction.POP, Register.RBP.name).newLine();
@@ -381,7 +426,7 @@ public class CodeGenerator implements AstVisitor {
         Symbol dst = null;
         if (left instanceof VariableAccess v) {
 
-            dst = symbolTable.getSymbol(symbolTable.getDeclaration(v.getIdentifier()).getIdentifier(), currentScope);
+            dst = v.getSymbol();
         }
 
 
@@ -405,7 +450,7 @@ public class CodeGenerator implements AstVisitor {
 
             if (operator == BinaryOperator.PLUS || operator == BinaryOperator.MINUS) {
 
-                Register result = Register.getFreeRegister(Register.RAX);
+                Register result = registers.getFreeRegister(Register.RAX);
                 code.addInstruction(Instruction.MOV, result.name, dst.getRegisterAsString(true)).newLine();
                 b.accept(this);
                 code.addInstruction(Instruction.MOV, dst.getRegisterAsString(true), result.name).newLine();
@@ -420,7 +465,7 @@ public class CodeGenerator implements AstVisitor {
                 if (b.getRight() instanceof BinaryExpression bin) {
 
                     right.accept(this);
-                    Register dividend = Register.getFreeRegister(Register.RBX);
+                    Register dividend = registers.getFreeRegister(Register.RBX);
                     code.addInstruction(Instruction.MOV, dividend.name, Register.RAX.name).newLine();
                     code.addInstruction(Instruction.MOV, Register.RAX.name).comma();
                     b.getLeft().accept(this);
@@ -462,14 +507,7 @@ public class CodeGenerator implements AstVisitor {
         else {
 
 
-            Symbol symbol = symbolTable.getSymbol(declaration.getIdentifier(), currentScope);
-            if (symbol == null) {
-
-                symbol = new Symbol(declaration.getIdentifier(), type);
-                rbpOffset += type.size();
-                symbol.setRegister(Register.RBP, rbpOffset);
-                symbolTable.add(symbol, currentScope);
-            }
+            Symbol symbol = symbolTable.getSymbol(declaration);
             code.addInstruction(Instruction.MOV, symbol.getRegisterAsString(true), "0").newLine();
         }
 
@@ -510,21 +548,21 @@ public class CodeGenerator implements AstVisitor {
 
             if (left instanceof Constant && right instanceof Constant) {
 
-                dst = Register.getFreeRegister();
+                dst = registers.getFreeRegister();
                 code.addInstruction(Instruction.MOV,  dst.name).comma();
                 left.accept(this);
                 code.newLine();
             }
             else if (left instanceof VariableAccess l && right instanceof VariableAccess r) {
 
-                dst = Register.getFreeRegister();
+                dst = registers.getFreeRegister();
                 code.addInstruction(Instruction.MOV, dst.name).comma();
                 l.accept(this);
                 code.newLine();
             }
             else if (right instanceof Constant) {
 
-                dst = Register.getFreeRegister();
+                dst = registers.getFreeRegister();
                 code.addInstruction(Instruction.MOV, dst.name).comma();
                 left.accept(this);
                 code.newLine();
@@ -577,14 +615,14 @@ public class CodeGenerator implements AstVisitor {
                     }
                     else {
 
-                        dst = Register.getFreeRegister(Register.RAX);
-                        dst.inUse = true;
+                        dst = registers.getFreeRegister(Register.RAX);
+                        registers.setInUse(dst, true);
                         code.addInstruction(Instruction.MOV, dst.name).comma();
                         right.accept(this);
                         code.newLine();
                         left.accept(this);
-                        code.addInstruction(instruction, dst.name, Register.getFreeRegister(Register.RAX).name).newLine();
-                        dst.inUse = false;
+                        code.addInstruction(instruction, dst.name, registers.getFreeRegister(Register.RAX).name).newLine();
+                        registers.setInUse(dst, false);
                     }
 
                 }
@@ -611,8 +649,8 @@ public class CodeGenerator implements AstVisitor {
 
                 if (operator == BinaryOperator.PLUS || operator == BinaryOperator.MINUS) {
 
-                    Register dst = Register.getFreeRegister(Register.RAX);
-                    dst.inUse = true;
+                    Register dst = registers.getFreeRegister(Register.RAX);
+                    registers.setInUse(dst, true);
 
                     code.addInstruction(Instruction.MOV, dst.name).comma();
                     left.accept(this);
@@ -622,12 +660,12 @@ public class CodeGenerator implements AstVisitor {
                     right.accept(this);
                     code.newLine();
 
-                    dst.inUse = false;
+                    registers.setInUse(dst, false);
                 }
                 else if (operator == BinaryOperator.TIMES) {
 
                     Register dst = Register.RAX;
-                    Register rhs = Register.getFreeRegister();
+                    Register rhs = registers.getFreeRegister();
                     code.addInstruction(Instruction.MOV, dst.name).comma();
                     left.accept(this);
                     code.newLine().addInstruction(Instruction.MOV, rhs.name).comma();
@@ -637,23 +675,23 @@ public class CodeGenerator implements AstVisitor {
                 }
                 else if (operator == BinaryOperator.DIV) {
 
-                    boolean raxSwap = Register.RAX.inUse;
-                    boolean rdxSwap = Register.RDX.inUse;
+                    boolean raxSwap = registers.isInUse(Register.RAX);
+                    boolean rdxSwap = registers.isInUse(Register.RDX);
                     Register raxReg = null;
                     Register rdxReg = null;
 
                     if (raxSwap) {
 
-                        raxReg = Register.getFreeRegister();
+                        raxReg = registers.getFreeRegister();
                         code.addInstruction(Instruction.MOV, raxReg.name, Register.RAX.name).newLine();
                     }
                     if (rdxSwap) {
 
-                        rdxReg = Register.getFreeRegister();
+                        rdxReg = registers.getFreeRegister();
                         code.addInstruction(Instruction.MOV, rdxReg.name, Register.RDX.name).newLine();
                     }
 
-                    Register rhs = Register.getFreeRegister();
+                    Register rhs = registers.getFreeRegister();
                     code.addInstruction(Instruction.MOV, Register.RAX.name).comma();
                     left.accept(this);
                     code.newLine().addInstruction(Instruction.MOV, rhs.name).comma();
@@ -676,23 +714,23 @@ public class CodeGenerator implements AstVisitor {
                 }
                 else if (operator == BinaryOperator.MOD) {
 
-                    boolean raxSwap = Register.RAX.inUse;
-                    boolean rdxSwap = Register.RDX.inUse;
+                    boolean raxSwap = registers.isInUse(Register.RAX);
+                    boolean rdxSwap = registers.isInUse(Register.RDX);
                     Register raxReg = null;
                     Register rdxReg = null;
 
                     if (raxSwap) {
 
-                        raxReg = Register.getFreeRegister();
+                        raxReg = registers.getFreeRegister();
                         code.addInstruction(Instruction.MOV, raxReg.name, Register.RAX.name).newLine();
                     }
                     if (rdxSwap) {
 
-                        rdxReg = Register.getFreeRegister();
+                        rdxReg = registers.getFreeRegister();
                         code.addInstruction(Instruction.MOV, rdxReg.name, Register.RDX.name).newLine();
                     }
 
-                    Register rhs = Register.getFreeRegister();
+                    Register rhs = registers.getFreeRegister();
                     code.addInstruction(Instruction.MOV, Register.RAX.name).comma();
                     left.accept(this);
                     code.newLine().addInstruction(Instruction.MOV, rhs.name).comma();
@@ -728,7 +766,7 @@ public class CodeGenerator implements AstVisitor {
             Expression parameter = params.get(i);
             if (parameter instanceof BinaryExpression b) {
 
-                Register result = Register.getFreeRegister(Register.RAX);
+                Register result = registers.getFreeRegister(Register.RAX);
                 b.accept(this);
                 code.addInstruction(Instruction.MOV, Register.RDI.name, result.name).newLine();
             }
@@ -745,7 +783,7 @@ public class CodeGenerator implements AstVisitor {
                 } else {
 
                     code.addInstruction(Instruction.PUSH);
-                    stackOffset -= Expression.evaluateType(parameter, symbolTable).size();
+                    stackOffset -= PUSH_SIZE;
                 }
 
                 parameter.accept(this);
@@ -754,14 +792,13 @@ public class CodeGenerator implements AstVisitor {
         }
 
 
-        code.addInstruction(Instruction.CALL, callExpression.getIdentifier()).newLine();
+        code.addInstruction(Instruction.CALL, symbolTable.getTarget(callExpression).getIdentifier()).newLine();
     }
 
     @Override
     public void visit(VariableAccess variable) {
 
-        Symbol symbol = symbolTable.getSymbol(variable.getIdentifier(), symbolTable.getScope(variable));
-        code.add(symbol.getRegisterAsString(true));
+        code.add(variable.getSymbol().getRegisterAsString(true));
     }
 
     @Override
@@ -773,7 +810,8 @@ public class CodeGenerator implements AstVisitor {
     @Override
     public void visit(FieldAccess fieldAccess) {
 
-
+        // MiniJ cannot allocate a record yet, so there is no record to load
+        // the base reference from; the FIELD symbol already holds the offset
     }
 
     @Override
@@ -801,8 +839,8 @@ public class CodeGenerator implements AstVisitor {
         code.add("1");
     }
 
-    public String getCode() {
+    public Code getCode() {
 
-        return code.toString();
+        return code;
     }
 }
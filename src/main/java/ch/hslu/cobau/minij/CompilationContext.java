@@ -0,0 +1,196 @@
+package ch.hslu.cobau.minij;
+
+import ch.hslu.cobau.minij.ast.AstElement;
+import ch.hslu.cobau.minij.ast.SourcePositions;
+import ch.hslu.cobau.minij.ast.type.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State that belongs to exactly one compilation: register allocation, the
+ * return type hint used to resolve overloaded calls, tracing flags and the
+ * diagnostics reported so far. Nothing in the pipeline keeps such state in
+ * static fields, so separate compilations can run on separate threads.
+ */
+public class CompilationContext {
+
+    private final RegisterState registers = new RegisterState();
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+    private SourcePositions positions = new SourcePositions();
+    private Type typeToLookFor;
+    private boolean symbolTrace = false;
+    private boolean fastLexer = false;
+    private boolean directParser = false;
+    private boolean generatedParser = false;
+    private boolean lazyBodies = false;
+    private FunctionCache functionCache;
+
+    /**
+     * @return a context for checking function bodies apart from the rest of
+     *         the unit. It starts without a return type hint and collects its
+     *         own diagnostics.
+     */
+    public CompilationContext fork() {
+
+        CompilationContext fork = new CompilationContext();
+        fork.symbolTrace = symbolTrace;
+        fork.functionCache = functionCache;
+        fork.positions = positions;
+        return fork;
+    }
+
+    public RegisterState getRegisters() {
+
+        return registers;
+    }
+
+    public Type getTypeToLookFor() {
+
+        return typeToLookFor;
+    }
+
+    public void setTypeToLookFor(Type typeToLookFor) {
+
+        this.typeToLookFor = typeToLookFor;
+    }
+
+    public boolean isSymbolTrace() {
+
+        return symbolTrace;
+    }
+
+    public void setSymbolTrace(boolean symbolTrace) {
+
+        this.symbolTrace = symbolTrace;
+    }
+
+    public boolean isFastLexer() {
+
+        return fastLexer;
+    }
+
+    /**
+     * Lexes ASCII sources with {@link FastLexer} instead of the generated
+     * lexer.
+     */
+    public void setFastLexer(boolean fastLexer) {
+
+        this.fastLexer = fastLexer;
+    }
+
+    public boolean isDirectParser() {
+
+        return directParser;
+    }
+
+    /**
+     * Builds the AST of ASCII sources with {@link ch.hslu.cobau.minij.ast.AstParser}
+     * instead of the generated parser, which needs the tokens of
+     * {@link FastLexer}. Sources of at least
+     * {@link MiniJCompiler#DIRECT_PARSER_THRESHOLD} bytes are parsed that way
+     * anyway.
+     */
+    public void setDirectParser(boolean directParser) {
+
+        this.directParser = directParser;
+    }
+
+    public boolean isGeneratedParser() {
+
+        return generatedParser;
+    }
+
+    /**
+     * Parses every source with the generated parser, also the ones the
+     * direct parser would be used for because of their size.
+     */
+    public void setGeneratedParser(boolean generatedParser) {
+
+        this.generatedParser = generatedParser;
+    }
+
+    public boolean isLazyBodies() {
+
+        return lazyBodies;
+    }
+
+    /**
+     * Leaves out the functions main cannot reach, without parsing or
+     * checking their bodies. Only the direct parser does that.
+     */
+    public void setLazyBodies(boolean lazyBodies) {
+
+        this.lazyBodies = lazyBodies;
+    }
+
+    public FunctionCache getFunctionCache() {
+
+        return functionCache;
+    }
+
+    public void setFunctionCache(FunctionCache functionCache) {
+
+        this.functionCache = functionCache;
+    }
+
+    /**
+     * Sets where the nodes of the unit being compiled are in the source, so
+     * that diagnostics can point at them.
+     */
+    public void setPositions(SourcePositions positions) {
+
+        this.positions = positions;
+    }
+
+    public List<Diagnostic> getDiagnostics() {
+
+        return diagnostics;
+    }
+
+    public boolean hasErrors() {
+
+        return !diagnostics.isEmpty();
+    }
+
+    /**
+     * Records an error and lets the current phase go on, so that it can
+     * report further errors. The phase calls {@link #abortOnErrors()} when
+     * it is done.
+     */
+    public void report(String message, AstElement node) {
+
+        diagnostics.add(new Diagnostic(message, positions.getLine(node), positions.getColumn(node)));
+    }
+
+    /**
+     * Ends the compilation if any error has been reported so far.
+     */
+    public void abortOnErrors() {
+
+        if (hasErrors()) {
+
+            throw new CompilationException(diagnostics.get(0).getMessage());
+        }
+    }
+
+    /**
+     * Records an error and ends the compilation.
+     */
+    public void error(String message, AstElement node) {
+
+        report(message, node);
+        throw new CompilationException(message);
+    }
+
+    public void error(String message) {
+
+        error(message, 1);
+    }
+
+    public void error(String message, int exitStatus) {
+
+        diagnostics.add(new Diagnostic(message));
+        throw new CompilationException(message, exitStatus);
+    }
+}
@@ -0,0 +1,24 @@
+package ch.hslu.cobau.minij;
+
+public class CompilationException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int exitStatus;
+
+    public CompilationException(String message) {
+
+        this(message, 1);
+    }
+
+    public CompilationException(String message, int exitStatus) {
+
+        super(message);
+        this.exitStatus = exitStatus;
+    }
+
+    public int getExitStatus() {
+
+        return exitStatus;
+    }
+}
@@ -0,0 +1,100 @@
+package ch.hslu.cobau.minij;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of compiling one source: the generated code, or the diagnostics
+ * together with the exit status the command line compiler ends with.
+ */
+public class CompilationResult {
+
+    private final Code code;
+    private final int exitStatus;
+    private final List<Diagnostic> syntaxErrors;
+    private final List<Diagnostic> errors;
+    private final List<Diagnostic> lexerErrors;
+
+    private CompilationResult(Code code, int exitStatus, List<Diagnostic> syntaxErrors, List<Diagnostic> errors,
+                              List<Diagnostic> lexerErrors) {
+
+        this.code = code;
+        this.exitStatus = exitStatus;
+        this.syntaxErrors = syntaxErrors;
+        this.errors = errors;
+        this.lexerErrors = lexerErrors;
+    }
+
+    public static CompilationResult success(Code code) {
+
+        return new CompilationResult(code, 0, List.of(), List.of(), List.of());
+    }
+
+    public static CompilationResult syntaxErrors(List<Diagnostic> syntaxErrors) {
+
+        return new CompilationResult(null, 1, syntaxErrors, List.of(), List.of());
+    }
+
+    public static CompilationResult errors(List<Diagnostic> errors, int exitStatus) {
+
+        return new CompilationResult(null, exitStatus, List.of(), errors, List.of());
+    }
+
+    /**
+     * @return the same result with the errors of the generated lexer, which
+     *         skips the offending characters so that the source may still
+     *         compile
+     */
+    CompilationResult withLexerErrors(List<Diagnostic> lexerErrors) {
+
+        return new CompilationResult(code, exitStatus, syntaxErrors, errors, lexerErrors);
+    }
+
+    public boolean isSuccess() {
+
+        return exitStatus == 0;
+    }
+
+    public Code getCode() {
+
+        return code;
+    }
+
+    public int getExitStatus() {
+
+        return exitStatus;
+    }
+
+    public boolean hasLexerErrors() {
+
+        return !lexerErrors.isEmpty();
+    }
+
+    /**
+     * @return the lexer errors, the syntax errors and then the semantic errors
+     */
+    public List<Diagnostic> getDiagnostics() {
+
+        List<Diagnostic> diagnostics = new ArrayList<>(lexerErrors);
+        diagnostics.addAll(syntaxErrors);
+        diagnostics.addAll(errors);
+        return diagnostics;
+    }
+
+    /**
+     * @return the lexer errors and then the syntax errors, the messages that
+     *         go to stderr
+     */
+    public List<String> getSyntaxErrors() {
+
+        List<String> messages = new ArrayList<>(lexerErrors.size() + syntaxErrors.size());
+        lexerErrors.forEach(e -> messages.add(e.toString()));
+        syntaxErrors.forEach(e -> messages.add(e.toString()));
+        return messages;
+    }
+
+    public List<String> getErrors() {
+
+        return errors.stream().map(Diagnostic::toString).toList();
+    }
+}
@@ -0,0 +1,97 @@
+package ch.hslu.cobau.minij;
+
+import java.io.*;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Thin client for {@link CompileServer}. It sends one source and reproduces
+ * what the command line compiler would have written to stdout, stderr or the
+ * output file, and returns its exit status.
+ */
+public class CompileClient {
+
+    private final SocketAddress address;
+    private int options = 0;
+
+    public CompileClient(SocketAddress address) {
+
+        this.address = address;
+    }
+
+    public void setFastLexer(boolean fastLexer) {
+
+        setOption(CompileServer.FAST_LEXER, fastLexer);
+    }
+
+    public void setDirectParser(boolean directParser) {
+
+        setOption(CompileServer.DIRECT_PARSER, directParser);
+    }
+
+    public void setGeneratedParser(boolean generatedParser) {
+
+        setOption(CompileServer.GENERATED_PARSER, generatedParser);
+    }
+
+    public void setLazyBodies(boolean lazyBodies) {
+
+        setOption(CompileServer.LAZY_BODIES, lazyBodies);
+    }
+
+    private void setOption(int option, boolean set) {
+
+        options = set ? options | option : options & ~option;
+    }
+
+    public int compile(String inputFile, String outputFile) throws IOException {
+
+        byte[] source;
+        String sourceName;
+        if (inputFile != null) {
+
+            source = Files.readAllBytes(Path.of(inputFile));
+            sourceName = inputFile;
+        }
+        else {
+
+            source = System.in.readAllBytes();
+            sourceName = "<stdin>";
+        }
+
+        try (SocketChannel channel = SocketChannel.open(address)) {
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(CompileServer.MAGIC);
+            out.writeInt(options);
+            out.writeUTF(sourceName);
+            out.writeInt(source.length);
+            out.write(source);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            int exitStatus = in.readInt();
+            byte[] stdout = new byte[in.readInt()];
+            in.readFully(stdout);
+            byte[] stderr = new byte[in.readInt()];
+            in.readFully(stderr);
+
+            System.err.write(stderr);
+            System.err.flush();
+            if (exitStatus == 0 && outputFile != null) {
+
+                Files.write(Path.of(outputFile), stdout);
+            }
+            else {
+
+                System.out.write(stdout);
+                System.out.flush();
+            }
+
+            return exitStatus;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package ch.hslu.cobau.minij;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Resident compiler process. Requests arrive over a Unix domain socket or a
+ * loopback TCP port and are compiled in this JVM, so the ANTLR DFA caches and
+ * the JIT compiled pipeline stay warm between requests.
+ *
+ * Request:  int magic, int options, UTF source name, int length, source bytes (UTF-8)
+ * Response: int exit status, int length, stdout bytes, int length, stderr bytes
+ *
+ * The options are the pipeline flags of the command line as a bit set, so a
+ * request is compiled the same way as it would have been locally.
+ */
+public class CompileServer {
+
+    static final int MAGIC = 0x4d4a4332;
+
+    static final int FAST_LEXER = 1;
+    static final int DIRECT_PARSER = 2;
+    static final int GENERATED_PARSER = 4;
+    static final int LAZY_BODIES = 8;
+
+    private final ServerSocketChannel serverChannel;
+    private final Path socketFile;
+    private final FunctionCache functionCache = new FunctionCache(FunctionCache.DEFAULT_MAX_ENTRIES);
+
+    private CompileServer(ServerSocketChannel serverChannel, Path socketFile) {
+
+        this.serverChannel = serverChannel;
+        this.socketFile = socketFile;
+    }
+
+    public static CompileServer bind(Path socketFile) throws IOException {
+
+        Files.deleteIfExists(socketFile);
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.bind(UnixDomainSocketAddress.of(socketFile));
+
+        return new CompileServer(channel, socketFile);
+    }
+
+    public static CompileServer bind(int port) throws IOException {
+
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+
+        return new CompileServer(channel, null);
+    }
+
+    static SocketAddress address(Path socketFile) {
+
+        return UnixDomainSocketAddress.of(socketFile);
+    }
+
+    static SocketAddress address(int port) {
+
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Accepts requests until the server channel is closed. Every connection
+     * is served on its own virtual thread where the runtime provides them,
+     * otherwise on a cached platform thread.
+     */
+    public void serve() throws IOException {
+
+        if (socketFile != null) {
+
+            Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+        }
+
+        System.err.println("MiniJ compile server listening on " + serverChannel.getLocalAddress());
+
+        ExecutorService executor = newRequestExecutor();
+        try {
+            while (serverChannel.isOpen()) {
+
+                SocketChannel connection = serverChannel.accept();
+                executor.execute(() -> handle(connection));
+            }
+        } catch (ClosedChannelException e) {
+
+            // close() was called, stop accepting
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void close() {
+
+        try {
+            serverChannel.close();
+            System.err.println(functionCache);
+            System.err.println(MiniJCompiler.parseStatistics());
+            if (socketFile != null) {
+
+                Files.deleteIfExists(socketFile);
+            }
+        } catch (IOException e) {
+
+            System.err.println("Could not close compile server: " + e);
+        }
+    }
+
+    private static ExecutorService newRequestExecutor() {
+
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void handle(SocketChannel connection) {
+
+        try (connection) {
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+
+            if (in.readInt() != MAGIC) {
+
+                return;
+            }
+
+            int options = in.readInt();
+            String sourceName = in.readUTF();
+            byte[] source = new byte[in.readInt()];
+            in.readFully(source);
+
+            CompilationContext context = new CompilationContext();
+            context.setFunctionCache(functionCache);
+            context.setFastLexer((options & FAST_LEXER) != 0);
+            context.setDirectParser((options & DIRECT_PARSER) != 0);
+            context.setGeneratedParser((options & GENERATED_PARSER) != 0);
+            context.setLazyBodies((options & LAZY_BODIES) != 0);
+            CompilationResult result = MiniJCompiler.compile(MappedCharStream.wrap(source, sourceName), context);
+
+            ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+            ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+            PrintStream err = new PrintStream(stderr, true, StandardCharsets.UTF_8);
+            result.getSyntaxErrors().forEach(err::println);
+            PrintStream messages = new PrintStream(stdout, true, StandardCharsets.UTF_8);
+            result.getErrors().forEach(messages::println);
+            if (result.isSuccess()) {
+
+                MiniJCompiler.writeCode(result.getCode(), Channels.newChannel(stdout));
+            }
+
+            out.writeInt(result.getExitStatus());
+            out.writeInt(stdout.size());
+            stdout.writeTo(out);
+            out.writeInt(stderr.size());
+            stderr.writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+
+            System.err.println("Compile request failed: " + e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ch.hslu.cobau.minij;
+
+/**
+ * An error found in a source, with the position it refers to if there is
+ * one. Printed in the same form as the syntax errors, "line 3:8 message".
+ */
+public class Diagnostic {
+
+    private final String message;
+    private final int line;
+    private final int column;
+
+    public Diagnostic(String message) {
+
+        this(message, -1, -1);
+    }
+
+    public Diagnostic(String message, int line, int column) {
+
+        this.message = message;
+        this.line = line;
+        this.column = column;
+    }
+
+    public String getMessage() {
+
+        return message;
+    }
+
+    /**
+     * @return the line, starting at 1, or -1 if the position is unknown
+     */
+    public int getLine() {
+
+        return line;
+    }
+
+    public int getColumn() {
+
+        return column;
+    }
+
+    @Override
+    public String toString() {
+
+        return line < 0 ? message : "line " + line + ":" + column + " " + message;
+    }
+}
@@ -0,0 +1,324 @@
+package ch.hslu.cobau.minij;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Content addressed store for compiler output on disk. Entries are named by
+ * the hash of the normalized source, the compiler version and the options.
+ * Next to whole units it keeps the functions of the last compilation of each
+ * source file for the {@link FunctionCache}, named by the hash of the path.
+ * Entries are written to a temporary file and moved into place atomically,
+ * so several compiler processes can share one directory. A hit refreshes
+ * the modification time of the entry, which is what eviction orders by.
+ * The directory is only listed on the first store and when the entries
+ * stored since take it over the limit. Eviction then makes room for a tenth
+ * of the limit, so a run storing many entries lists it rarely.
+ */
+public class DiskCache {
+
+    private static final String SUFFIX = ".asm";
+    private static final String FUNCTION_SUFFIX = ".fn";
+    private static final String FUNCTION_OPTIONS = "functions";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+
+    private final Path directory;
+    private final long maxBytes;
+
+    // bytes in the directory as of the last listing plus the entries stored
+    // since, -1 before the first store
+    private long size = -1;
+
+    public DiskCache(Path directory, long maxBytes) throws IOException {
+
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    public String key(byte[] source, String options) {
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        digest.update(compilerVersion().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(options.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+
+        // line endings do not change the generated code
+        byte[] normalized = new byte[source.length];
+        int length = 0;
+        for (int i = 0; i < source.length; i++) {
+
+            if (source[i] == '\r' && i + 1 < source.length && source[i + 1] == '\n') {
+
+                continue;
+            }
+            normalized[length++] = source[i];
+        }
+        digest.update(normalized, 0, length);
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return true if an entry exists for the key and was written to out
+     */
+    public boolean writeTo(String key, WritableByteChannel out) throws IOException {
+
+        Path entry = directory.resolve(key + SUFFIX);
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.hasRemaining()) {
+
+                out.write(buffer);
+            }
+        } catch (NoSuchFileException e) {
+
+            return false;
+        }
+
+        touch(entry);
+        return true;
+    }
+
+    /**
+     * @return the code of the functions by fingerprint, as stored for the
+     *         source file, or an empty map if there is no entry for it
+     */
+    public Map<String, Code> readFunctions(Path sourceFile) throws IOException {
+
+        Path entry = directory.resolve(functionsKey(sourceFile) + FUNCTION_SUFFIX);
+        Map<String, Code> functions = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+
+                String fingerprint = in.readUTF();
+                functions.put(fingerprint, Code.readSectionsFrom(in));
+            }
+        } catch (NoSuchFileException e) {
+
+            return functions;
+        }
+
+        touch(entry);
+        return functions;
+    }
+
+    private static void touch(Path entry) {
+
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+
+            // evicted by another process in the meantime, what was read is complete anyway
+        }
+    }
+
+    public void store(String key, Code code) throws IOException {
+
+        Path temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+
+                MiniJCompiler.writeCode(code, channel);
+            }
+            moveIntoPlace(temp, directory.resolve(key + SUFFIX));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Replaces the functions stored for the source file. One entry per file
+     * keeps a compilation down to a single read and write, the fingerprints
+     * decide which of the functions are still valid.
+     */
+    public void storeFunctions(Path sourceFile, Map<String, Code> functions) throws IOException {
+
+        String key = functionsKey(sourceFile);
+        Path temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+
+                out.writeInt(functions.size());
+                for (Map.Entry<String, Code> function : functions.entrySet()) {
+
+                    out.writeUTF(function.getKey());
+                    function.getValue().writeSectionsTo(out);
+                }
+            }
+            moveIntoPlace(temp, directory.resolve(key + FUNCTION_SUFFIX));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private String functionsKey(Path sourceFile) {
+
+        byte[] path = sourceFile.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8);
+        return key(path, FUNCTION_OPTIONS);
+    }
+
+    private void moveIntoPlace(Path temp, Path entry) throws IOException {
+
+        // the content is the same for the same key, a replaced entry
+        // does not take more space
+        long added = Files.exists(entry) ? 0 : Files.size(temp);
+        Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        added(added);
+    }
+
+    private synchronized void added(long bytes) throws IOException {
+
+        if (size < 0) {
+
+            evict();
+        }
+        else {
+
+            size += bytes;
+            if (size > maxBytes) {
+
+                evict();
+            }
+        }
+    }
+
+    private void evict() throws IOException {
+
+        List<Path> entries = new ArrayList<>();
+        long size = 0;
+        long now = System.currentTimeMillis();
+        try (Stream<Path> files = Files.list(directory)) {
+
+            for (Path file : (Iterable<Path>) files::iterator) {
+
+                String name = file.getFileName().toString();
+                try {
+                    if (name.endsWith(SUFFIX) || name.endsWith(FUNCTION_SUFFIX)) {
+
+                        entries.add(file);
+                        size += Files.size(file);
+                    }
+                    else if (name.endsWith(TEMP_SUFFIX)
+                            && now - Files.getLastModifiedTime(file).toMillis() > STALE_TEMP_MILLIS) {
+
+                        Files.deleteIfExists(file);
+                    }
+                } catch (NoSuchFileException e) {
+
+                    // removed by another process
+                }
+            }
+        }
+
+        this.size = size;
+        if (size <= maxBytes) {
+
+            return;
+        }
+
+        long target = maxBytes - maxBytes / 10;
+        entries.sort(Comparator.comparingLong(DiskCache::lastModified));
+        for (Path entry : entries) {
+
+            if (size <= target) {
+
+                break;
+            }
+
+            try {
+                long entrySize = Files.size(entry);
+                Files.deleteIfExists(entry);
+                size -= entrySize;
+            } catch (NoSuchFileException e) {
+
+                // removed by another process
+            }
+        }
+        this.size = size;
+    }
+
+    private static long lastModified(Path file) {
+
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static class Version {
+
+        static final String VALUE = compute();
+    }
+
+    /**
+     * The hash of the compiler classes: the jar, or every class file when
+     * running from a build directory. A rebuild that changes any class
+     * changes every key, even if it keeps the implementation version.
+     */
+    static String compilerVersion() {
+
+        return Version.VALUE;
+    }
+
+    private static String compute() {
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            CodeSource source = MiniJCompiler.class.getProtectionDomain().getCodeSource();
+            Path location = Path.of(source.getLocation().toURI());
+            if (Files.isDirectory(location)) {
+
+                List<Path> classFiles;
+                try (Stream<Path> files = Files.walk(location)) {
+
+                    classFiles = files.filter(f -> f.toString().endsWith(".class")).sorted().toList();
+                }
+                for (Path classFile : classFiles) {
+
+                    digest.update(location.relativize(classFile).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                    digest.update(Files.readAllBytes(classFile));
+                }
+            }
+            else {
+
+                digest.update(Files.readAllBytes(location));
+            }
+
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | URISyntaxException | NoSuchAlgorithmException | RuntimeException e) {
+
+            // without knowing the classes no entry of an earlier run can be
+            // trusted, the cache is only shared within this process then
+            return "unknown-" + ProcessHandle.current().pid() + "-" + System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package ch.hslu.cobau.minij;
+
+import org.antlr.v4.runtime.Token;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Hand-written lexer for the token set of {@code MiniJ.g4}. It runs over the
+ * bytes of an ASCII source and writes every token into parallel int arrays
+ * (kind, start offset, length, line and column), so lexing allocates nothing
+ * per token. Token kinds are the constants of the generated
+ * {@link MiniJLexer} and the rules are applied the same way: the longest
+ * match wins, a keyword wins over an identifier of the same length, and a
+ * sign directly in front of a digit belongs to the integer.
+ * <p>
+ * Input the grammar does not accept is only marked by {@link #hasErrors()};
+ * the driver lexes such sources with {@link MiniJLexer} again so the syntax
+ * errors are reported exactly as before.
+ */
+public class FastLexer {
+
+    // character classes, everything else is OTHER
+    private static final byte OTHER = 0;
+    private static final byte LETTER = 1;
+    private static final byte DIGIT = 2;
+    private static final byte SPACE = 3;
+    private static final byte NEWLINE = 4;
+    private static final byte QUOTE = 5;
+    private static final byte SLASH = 6;
+    private static final byte SIGN = 7;
+    private static final byte PUNCTUATION = 8;
+
+    private static final byte[] CLASSES = new byte[128];
+
+    // kind of the token consisting of just this character
+    private static final int[] SINGLE = new int[128];
+
+    // second character and kind of the two character operators
+    private static final byte[] PAIR = new byte[128];
+    private static final int[] PAIR_KIND = new int[128];
+
+    private static final String[] KEYWORDS = {
+            "record", "if", "else", "while", "return", "void", "int", "bool", "text", "true", "false"
+    };
+    private static final int[] KEYWORD_KINDS = {
+            MiniJLexer.RECORD, MiniJLexer.IF, MiniJLexer.ELSE, MiniJLexer.WHILE, MiniJLexer.RETURN,
+            MiniJLexer.VOID, MiniJLexer.INT, MiniJLexer.BOOLEAN, MiniJLexer.STRING, MiniJLexer.TRUE, MiniJLexer.FALSE
+    };
+
+    // indices into KEYWORDS by first letter
+    private static final int[][] KEYWORDS_BY_FIRST = new int[128][];
+
+    static {
+        for (int c = 'a'; c <= 'z'; c++) {
+
+            CLASSES[c] = LETTER;
+            CLASSES[c - 'a' + 'A'] = LETTER;
+        }
+        for (int c = '0'; c <= '9'; c++) {
+
+            CLASSES[c] = DIGIT;
+        }
+        CLASSES[' '] = SPACE;
+        CLASSES['\t'] = SPACE;
+        CLASSES['\r'] = SPACE;
+        CLASSES['\n'] = NEWLINE;
+        CLASSES['"'] = QUOTE;
+        CLASSES['/'] = SLASH;
+        CLASSES['+'] = SIGN;
+        CLASSES['-'] = SIGN;
+
+        single('(', MiniJLexer.LPAREN);
+        single(')', MiniJLexer.RPAREN);
+        single('{', MiniJLexer.LBRACE);
+        single('}', MiniJLexer.RBRACE);
+        single('[', MiniJLexer.LBRACKET);
+        single(']', MiniJLexer.RBRACKET);
+        single(':', MiniJLexer.COLON);
+        single(';', MiniJLexer.SEMICOLON);
+        single(',', MiniJLexer.COMMA);
+        single('=', MiniJLexer.ASSIGN);
+        single('+', MiniJLexer.PLUS);
+        single('-', MiniJLexer.MINUS);
+        single('*', MiniJLexer.TIMES);
+        single('/', MiniJLexer.DIV);
+        single('%', MiniJLexer.MOD);
+        single('.', MiniJLexer.DOT);
+        single('<', MiniJLexer.LESSER);
+        single('>', MiniJLexer.GREATER);
+        single('!', MiniJLexer.NOT);
+        single('&', MiniJLexer.REF);
+
+        pair('+', '+', MiniJLexer.INCREMENT);
+        pair('-', '-', MiniJLexer.DECREMENT);
+        pair('=', '=', MiniJLexer.EQUAL);
+        pair('!', '=', MiniJLexer.UNEQUAL);
+        pair('<', '=', MiniJLexer.LESSER_EQ);
+        pair('>', '=', MiniJLexer.GREATER_EQ);
+        pair('&', '&', MiniJLexer.AND);
+        pair('|', '|', MiniJLexer.OR);
+
+        for (int i = 0; i < KEYWORDS.length; i++) {
+
+            char first = KEYWORDS[i].charAt(0);
+            int[] indices = KEYWORDS_BY_FIRST[first];
+            indices = indices == null ? new int[1] : Arrays.copyOf(indices, indices.length + 1);
+            indices[indices.length - 1] = i;
+            KEYWORDS_BY_FIRST[first] = indices;
+        }
+    }
+
+    private static void single(char c, int kind) {
+
+        if (CLASSES[c] == OTHER) {
+
+            CLASSES[c] = PUNCTUATION;
+        }
+        SINGLE[c] = kind;
+    }
+
+    private static void pair(char first, char second, int kind) {
+
+        if (CLASSES[first] == OTHER) {
+
+            CLASSES[first] = PUNCTUATION;
+        }
+        PAIR[first] = (byte) second;
+        PAIR_KIND[first] = kind;
+    }
+
+    private final ByteBuffer source;
+    private final int size;
+
+    private int[] kinds;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int[] columns;
+    private int count = 0;
+    private int errors = 0;
+
+    private int line = 1;
+    private int lineStart = 0;
+
+    /**
+     * Lexes the whole source. Every byte must be an ASCII character, which
+     * is what {@link MappedCharStream} guarantees for the buffers it maps.
+     */
+    public FastLexer(ByteBuffer source) {
+
+        this.source = source;
+        this.size = source.limit();
+
+        // about one token per five bytes in typical sources
+        int capacity = size / 5 + 16;
+        kinds = new int[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        columns = new int[capacity];
+
+        lex();
+    }
+
+    private void lex() {
+
+        int i = 0;
+        while (i < size) {
+
+            int c = source.get(i);
+            byte characterClass = c >= 0 ? CLASSES[c] : OTHER;
+            switch (characterClass) {
+                case SPACE -> i++;
+                case NEWLINE -> {
+                    i++;
+                    line++;
+                    lineStart = i;
+                }
+                case LETTER -> i = identifier(i);
+                case DIGIT -> i = integer(i, i);
+                case QUOTE -> i = string(i);
+                case SLASH -> i = slash(i);
+                case SIGN -> {
+                    // a sign directly followed by a digit is the longer match
+                    if (i + 1 < size && isDigit(source.get(i + 1))) {
+
+                        i = integer(i, i + 1);
+                    }
+                    else {
+
+                        i = operator(c, i);
+                    }
+                }
+                case PUNCTUATION -> i = operator(c, i);
+                default -> {
+                    // like the generated lexer, skip the character and go on
+                    errors++;
+                    i++;
+                }
+            }
+        }
+
+        // the end of file token sits behind the last character
+        add(Token.EOF, size, 0, line, size - lineStart);
+    }
+
+    private int identifier(int start) {
+
+        int i = start + 1;
+        while (i < size) {
+
+            int c = source.get(i);
+            if (c < 0 || (CLASSES[c] != LETTER && CLASSES[c] != DIGIT && c != '_' && c != '$')) {
+
+                break;
+            }
+            i++;
+        }
+
+        add(keyword(start, i - start), start, i - start, line, start - lineStart);
+        return i;
+    }
+
+    private int keyword(int start, int length) {
+
+        int[] candidates = KEYWORDS_BY_FIRST[source.get(start)];
+        if (candidates != null) {
+
+            for (int candidate : candidates) {
+
+                if (matches(KEYWORDS[candidate], start, length)) {
+
+                    return KEYWORD_KINDS[candidate];
+                }
+            }
+        }
+
+        return MiniJLexer.ID;
+    }
+
+    private boolean matches(String keyword, int start, int length) {
+
+        if (keyword.length() != length) {
+
+            return false;
+        }
+
+        for (int i = 1; i < length; i++) {
+
+            if (source.get(start + i) != keyword.charAt(i)) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int integer(int start, int digits) {
+
+        int i = digits + 1;
+        while (i < size && isDigit(source.get(i))) {
+
+            i++;
+        }
+
+        add(MiniJLexer.INTEGER, start, i - start, line, start - lineStart);
+        return i;
+    }
+
+    private int string(int start) {
+
+        int startLine = line;
+        int startColumn = start - lineStart;
+        int i = start + 1;
+        while (i < size && source.get(i) != '"') {
+
+            if (source.get(i) == '\n') {
+
+                line++;
+                lineStart = i + 1;
+            }
+            i++;
+        }
+
+        if (i == size) {
+
+            // no string without the closing quote, the generated lexer
+            // drops everything it has read looking for it
+            errors++;
+            return size;
+        }
+
+        add(MiniJLexer.STRINGCONSTANT, start, i + 1 - start, startLine, startColumn);
+        return i + 1;
+    }
+
+    private int slash(int start) {
+
+        int next = start + 1 < size ? source.get(start + 1) : -1;
+        if (next == '/') {
+
+            int i = start + 2;
+            while (i < size && source.get(i) != '\n' && source.get(i) != '\r') {
+
+                i++;
+            }
+            return i;
+        }
+
+        if (next == '*') {
+
+            int startLine = line;
+            int startLineStart = lineStart;
+            for (int i = start + 2; i + 1 < size; i++) {
+
+                byte c = source.get(i);
+                if (c == '*' && source.get(i + 1) == '/') {
+
+                    return i + 2;
+                }
+                if (c == '\n') {
+
+                    line++;
+                    lineStart = i + 1;
+                }
+            }
+
+            // an unterminated comment is no comment, only the slash matches
+            line = startLine;
+            lineStart = startLineStart;
+        }
+
+        add(MiniJLexer.DIV, start, 1, line, start - lineStart);
+        return start + 1;
+    }
+
+    private int operator(int c, int start) {
+
+        if (PAIR[c] != 0 && start + 1 < size && source.get(start + 1) == PAIR[c]) {
+
+            add(PAIR_KIND[c], start, 2, line, start - lineStart);
+            return start + 2;
+        }
+
+        if (SINGLE[c] == 0) {
+
+            // the generated lexer drops the character it failed on as well
+            errors++;
+            return skip(start + 1);
+        }
+
+        add(SINGLE[c], start, 1, line, start - lineStart);
+        return start + 1;
+    }
+
+    private int skip(int i) {
+
+        if (i == size) {
+
+            return i;
+        }
+        if (source.get(i) == '\n') {
+
+            line++;
+            lineStart = i + 1;
+        }
+        return i + 1;
+    }
+
+    private static boolean isDigit(int c) {
+
+        return c >= '0' && c <= '9';
+    }
+
+    private void add(int kind, int start, int length, int line, int column) {
+
+        if (count == kinds.length) {
+
+            int capacity = count * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+        }
+
+        kinds[count] = kind;
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        columns[count] = column;
+        count++;
+    }
+
+    /**
+     * @return true if some input is not a token of the grammar
+     */
+    public boolean hasErrors() {
+
+        return errors > 0;
+    }
+
+    /**
+     * @return number of tokens including the end of file token
+     */
+    public int size() {
+
+        return count;
+    }
+
+    public int getKind(int token) {
+
+        return kinds[token];
+    }
+
+    public int getStart(int token) {
+
+        return starts[token];
+    }
+
+    public int getLength(int token) {
+
+        return lengths[token];
+    }
+
+    public int getLine(int token) {
+
+        return lines[token];
+    }
+
+    public int getColumn(int token) {
+
+        return columns[token];
+    }
+
+    /**
+     * @return the text of a token, only meant for the few places that need a
+     *         string like identifiers and constants
+     */
+    public String getText(int token) {
+
+        byte[] bytes = new byte[lengths[token]];
+        source.get(starts[token], bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
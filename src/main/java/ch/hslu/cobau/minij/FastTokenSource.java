@@ -0,0 +1,77 @@
+package ch.hslu.cobau.minij;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * Feeds the tokens of a {@link FastLexer} to the generated parser. The token
+ * objects the parser needs are only created here, their text is read from
+ * the character stream on demand just like for tokens of {@link MiniJLexer}.
+ */
+public class FastTokenSource implements TokenSource {
+
+    private final FastLexer lexer;
+    private final CharStream charStream;
+    private final Pair<TokenSource, CharStream> sourcePair;
+    private TokenFactory<?> factory = CommonTokenFactory.DEFAULT;
+    private int next = 0;
+
+    public FastTokenSource(FastLexer lexer, CharStream charStream) {
+
+        this.lexer = lexer;
+        this.charStream = charStream;
+        this.sourcePair = new Pair<>(this, charStream);
+    }
+
+    @Override
+    public Token nextToken() {
+
+        // the end of file token is the last one and is repeated if asked again
+        int token = Math.min(next, lexer.size() - 1);
+        next = token + 1;
+
+        int start = lexer.getStart(token);
+        return factory.create(sourcePair, lexer.getKind(token), null, Token.DEFAULT_CHANNEL,
+                start, start + lexer.getLength(token) - 1, lexer.getLine(token), lexer.getColumn(token));
+    }
+
+    @Override
+    public int getLine() {
+
+        return lexer.getLine(Math.min(next, lexer.size() - 1));
+    }
+
+    @Override
+    public int getCharPositionInLine() {
+
+        return lexer.getColumn(Math.min(next, lexer.size() - 1));
+    }
+
+    @Override
+    public CharStream getInputStream() {
+
+        return charStream;
+    }
+
+    @Override
+    public String getSourceName() {
+
+        return charStream.getSourceName();
+    }
+
+    @Override
+    public void setTokenFactory(TokenFactory<?> factory) {
+
+        this.factory = factory;
+    }
+
+    @Override
+    public TokenFactory<?> getTokenFactory() {
+
+        return factory;
+    }
+}
@@ -12,14 +12,18 @@ import ch.hslu.cobau.minij.ast.type.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.IntStream;
 
 
 public class FirstPassVisitor implements AstVisitor {
 
-    private SymbolTable symbolTable = new SymbolTable();
+    private final CompilationContext context;
+    private final SymbolTable symbolTable;
     private Scope currentScope;
-    public FirstPassVisitor() {
+    public FirstPassVisitor(CompilationContext context) {
 
+        this.context = context;
+        symbolTable = new SymbolTable(context);
     }
 
     private Function makeFunction(Type ret,
@@ -40,16 +44,16 @@ public class FirstPassVisitor implements AstVisitor {
         List<Function> functions = program.getFunctions();
 
         functions.add(makeFunction(
-                new VoidType(),
+                TypePool.VOID,
                 "writeInt",
-                new Type[] {new IntegerType()},
+                new Type[] {TypePool.INTEGER},
                 new String[]{"x"},
                 new ArrayList<Statement>()));
 
         functions.add(makeFunction(
-                new VoidType(),
+                TypePool.VOID,
                 "writeChar",
-                new Type[] {new IntegerType()},
+                new Type[] {TypePool.INTEGER},
                 new String[]{"x"},
                 new ArrayList<>()
         ));
@@ -59,7 +63,7 @@ public class FirstPassVisitor implements AstVisitor {
         List<Statement> statements = new ArrayList<>();
         statements.add(ret);
         functions.add(makeFunction(
-                new IntegerType(),
+                TypePool.INTEGER,
                 "readInt",
                 new Type[]{},
                 new String[]{},
@@ -71,7 +75,7 @@ public class FirstPassVisitor implements AstVisitor {
         statements = new ArrayList<>();
         statements.add(ret);
         functions.add(makeFunction(
-                new StringType(),
+                TypePool.STRING,
                 "readChar",
                 new Type[]{},
                 new String[]{},
@@ -82,7 +86,7 @@ public class FirstPassVisitor implements AstVisitor {
         statements = new ArrayList<>();
         statements.add(ret);
         functions.add(makeFunction(
-                new IntegerType(),
+                TypePool.INTEGER,
                 "readChar",
                 new Type[]{},
                 new String[]{},
@@ -92,29 +96,70 @@ public class FirstPassVisitor implements AstVisitor {
 
     }
 
+    // a function found in the cache has been checked before, together with
+    // everything its code depends on, so only its signature is looked at
+    private void lookUpCachedFunctions(Unit program) {
+
+        FunctionCache cache = context.getFunctionCache();
+        if (cache == null) {
+
+            return;
+        }
+
+        // hashed and looked up in parallel, recorded in order
+        List<Function> functions = program.getFunctions();
+        FunctionFingerprint.Globals globals =
+                new FunctionFingerprint.Globals(program.getGlobals(), functions, program.getStructs());
+        String[] fingerprints = new String[functions.size()];
+        Code[] code = new Code[functions.size()];
+        // an unreached function has no code to look up
+        IntStream.range(0, functions.size()).parallel()
+                .filter(i -> !functions.get(i).isBodySkipped())
+                .forEach(i -> {
+
+                    fingerprints[i] = FunctionFingerprint.of(functions.get(i), globals);
+                    code[i] = cache.get(fingerprints[i]);
+                });
+
+        for (int i = 0; i < functions.size(); i++) {
+
+            symbolTable.setFingerprint(functions.get(i), fingerprints[i]);
+            symbolTable.setCachedCode(functions.get(i), code[i]);
+        }
+    }
+
     @Override
     public void visit(Unit program) {
 
         currentScope = symbolTable.getGlobalScope();
+        context.setPositions(program.getPositions());
+        symbolTable.setIdentifiers(program.getIdentifiers());
+        symbolTable.reserve(program.getNodeCount());
+        lookUpCachedFunctions(program);
         insertBuiltinFunctions(program);
         program.visitChildren(this);
+
+        // every declaration error of the unit is reported, but the later
+        // passes need consistent declarations
+        context.abortOnErrors();
     }
 
     @Override
     public void visit(Function function) {
 
-
+        // only the signature of a cached or unreached function is checked
+        boolean signatureOnly = function.isBodySkipped() || symbolTable.getCachedCode(function) != null;
         if (function.getIdentifier().equals("main")) {
-            if (!function.getReturnType().equals(new IntegerType())) {
+            if (function.getReturnType() != TypePool.INTEGER) {
 
-                MiniJCompiler.printErrorAndExit("Main function must have a return type of int");
+                context.report("Main function must have a return type of int", function);
             }
             else if (function.getFormalParameters().size() != 0) {
 
-                MiniJCompiler.printErrorAndExit("Main function cannot take any arguments");
+                context.report("Main function cannot take any arguments", function);
             }
         }
-        else if (!function.getReturnType().equals(new VoidType())) {
+        else if (function.getReturnType() != TypePool.VOID && !signatureOnly) {
             List<Statement> statements = function.getStatements();
             boolean hasReturnStatement = false;
             OUTER: for (Statement s : statements) {
@@ -146,26 +191,33 @@ public class FirstPassVisitor implements AstVisitor {
 
             if (!hasReturnStatement) {
 
-                MiniJCompiler.printErrorAndExit("Missing return statement in function " + function.getIdentifier());
+                context.report("Missing return statement in function " + function.getIdentifier(), function);
             }
         }
 
-        List<Function> functions = symbolTable.getAllFunctionsByName(function.getIdentifier());
+        List<Function> functions = symbolTable.getOverloads(function.getIdentifier(), function.getFormalParameters().size());
         for (Function f : functions) {
 
             if (function.equals(f)) {
 
-                MiniJCompiler.printErrorAndExit("Redefinition of function: " + function.toString() + "\n" + f.toString());
+                context.report("Redefinition of function: " + function.toString() + "\n" + f.toString(), function);
 
             }
         }
 
 
 
-        currentScope.addSymbol(function.getIdentifier());
+        currentScope.addSymbol(symbolTable.nameOf(function, function.getIdentifier()));
         currentScope = symbolTable.addScope(currentScope, function);
         symbolTable.add(function, currentScope);
-        function.visitChildren(this);
+        if (signatureOnly) {
+
+            function.getFormalParameters().forEach(parameter -> parameter.accept(this));
+        }
+        else {
+
+            function.visitChildren(this);
+        }
 
 
         currentScope = currentScope.getParent();
@@ -174,11 +226,12 @@ public class FirstPassVisitor implements AstVisitor {
     @Override
     public void visit(Declaration declaration) {
 
-        if (currentScope.hasSymbol(declaration.getIdentifier())) {
+        int name = symbolTable.nameOf(declaration, declaration.getIdentifier());
+        if (currentScope.hasSymbol(name)) {
 
-            MiniJCompiler.printErrorAndExit("Redefinition of variable: " + declaration.getIdentifier());
+            context.report("Redefinition of variable: " + declaration.getIdentifier(), declaration);
         }
-        currentScope.addSymbol(declaration.getIdentifier());
+        currentScope.addSymbol(name);
         symbolTable.add(declaration, currentScope);
         declaration.visitChildren(this);
     }
@@ -186,12 +239,13 @@ public class FirstPassVisitor implements AstVisitor {
     @Override
     public void visit(Struct record) {
 
-        if (currentScope.hasSymbol(record.getIdentifier())) {
+        int name = symbolTable.nameOf(record, record.getIdentifier());
+        if (currentScope.hasSymbol(name)) {
 
-            MiniJCompiler.printErrorAndExit("Redefinition of record: " + record.getIdentifier());
+            context.report("Redefinition of record: " + record.getIdentifier(), record);
         }
 
-        currentScope.addSymbol(record.getIdentifier());
+        currentScope.addSymbol(name);
         currentScope = symbolTable.addScope(currentScope, record);
         symbolTable.add(record, currentScope);
 
@@ -272,13 +326,14 @@ public class FirstPassVisitor implements AstVisitor {
     @Override
     public void visit(VariableAccess variable) {
 
-        if (!currentScope.hasSymbolInSelfOrParent(variable.getIdentifier())) {
+        int name = symbolTable.nameOf(variable, variable.getIdentifier());
+        if (!currentScope.hasSymbolInSelfOrParent(name)) {
 
-            MiniJCompiler.printErrorAndExit("Accessing undefined variable: " + variable.getIdentifier());
+            context.report("Accessing undefined variable: " + variable.getIdentifier(), variable);
         }
-        else if (symbolTable.getDeclaration(variable.getIdentifier()) == null) {
+        else if (currentScope.lookupDeclaration(name) == null) {
 
-            MiniJCompiler.printErrorAndExit("Accessing undefined variable: " + variable.getIdentifier());
+            context.report("Accessing undefined variable: " + variable.getIdentifier(), variable);
         }
 
         symbolTable.add(variable, currentScope);
@@ -302,24 +357,28 @@ public class FirstPassVisitor implements AstVisitor {
     @Override
     public void visit(FalseConstant falseConstant) {
 
+        symbolTable.add(falseConstant, currentScope);
         falseConstant.visitChildren(this);
     }
 
     @Override
     public void visit(IntegerConstant integerConstant) {
 
+        symbolTable.add(integerConstant, currentScope);
         integerConstant.visitChildren(this);
     }
 
     @Override
     public void visit(StringConstant stringConstant) {
 
+        symbolTable.add(stringConstant, currentScope);
         stringConstant.visitChildren(this);
     }
 
     @Override
     public void visit(TrueConstant trueConstant) {
 
+        symbolTable.add(trueConstant, currentScope);
         trueConstant.visitChildren(this);
     }
 
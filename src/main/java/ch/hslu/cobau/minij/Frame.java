@@ -0,0 +1,21 @@
+package ch.hslu.cobau.minij;
+
+/**
+ * The function that is currently being generated. Parameters and locals
+ * already carry their slots from the binding pass, so a frame only gives the
+ * expression helpers access to the symbol table.
+ */
+public class Frame {
+
+    private final SymbolTable symbolTable;
+
+    public Frame(SymbolTable symbolTable) {
+
+        this.symbolTable = symbolTable;
+    }
+
+    public SymbolTable getSymbolTable() {
+
+        return symbolTable;
+    }
+}
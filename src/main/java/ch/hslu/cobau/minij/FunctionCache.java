@@ -0,0 +1,132 @@
+package ch.hslu.cobau.minij;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generated code of single functions, keyed by {@link FunctionFingerprint}.
+ * A cache outlives a compilation: it is shared by all compilations that use
+ * the same instance, e.g. the requests of one compile server or the files of
+ * one batch. A cache loaded from a {@link DiskCache} serves one compilation
+ * of a source file and outlives the process. The least recently used
+ * fragments are dropped once the cache is full.
+ *
+ * A function found here is neither type checked nor generated again, but the
+ * whole unit is still lexed and parsed, and the declarations of every
+ * function are still collected.
+ */
+public class FunctionCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+
+    private final Map<String, Code> fragments;
+    // what the compilation got or put, only for a cache loaded from disk
+    private final Map<String, Code> used;
+    private int loaded = 0;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public FunctionCache(int maxEntries) {
+
+        this(maxEntries, null);
+    }
+
+    private FunctionCache(int maxEntries, Map<String, Code> used) {
+
+        fragments = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Code> eldest) {
+
+                return size() > maxEntries;
+            }
+        };
+        this.used = used;
+    }
+
+    /**
+     * @return a cache for one compilation of the source file, holding the
+     *         functions stored for it by the last one
+     */
+    public static FunctionCache load(DiskCache diskCache, Path sourceFile) throws IOException {
+
+        Map<String, Code> stored = diskCache.readFunctions(sourceFile);
+        FunctionCache cache = new FunctionCache(Integer.MAX_VALUE, new HashMap<>());
+        cache.fragments.putAll(stored);
+        cache.loaded = stored.size();
+
+        return cache;
+    }
+
+    /**
+     * Stores the functions the compilation used for the next one, unless
+     * they are exactly the ones that were loaded.
+     */
+    public void store(DiskCache diskCache, Path sourceFile) throws IOException {
+
+        synchronized (fragments) {
+
+            if (getMisses() == 0 && used.size() == loaded) {
+
+                return;
+            }
+
+            diskCache.storeFunctions(sourceFile, used);
+        }
+    }
+
+    public Code get(String fingerprint) {
+
+        Code code;
+        synchronized (fragments) {
+
+            code = fragments.get(fingerprint);
+            if (code != null && used != null) {
+
+                used.put(fingerprint, code);
+            }
+        }
+
+        if (code != null) {
+
+            hits.incrementAndGet();
+        }
+        else {
+
+            misses.incrementAndGet();
+        }
+
+        return code;
+    }
+
+    public void put(String fingerprint, Code code) {
+
+        synchronized (fragments) {
+
+            fragments.put(fingerprint, code);
+            if (used != null) {
+
+                used.put(fingerprint, code);
+            }
+        }
+    }
+
+    public long getHits() {
+
+        return hits.get();
+    }
+
+    public long getMisses() {
+
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+
+        return "function cache: " + getHits() + " hits, " + getMisses() + " misses";
+    }
+}
@@ -0,0 +1,313 @@
+package ch.hslu.cobau.minij;
+
+import ch.hslu.cobau.minij.ast.BaseAstVisitor;
+import ch.hslu.cobau.minij.ast.constants.*;
+import ch.hslu.cobau.minij.ast.entity.Declaration;
+import ch.hslu.cobau.minij.ast.entity.Function;
+import ch.hslu.cobau.minij.ast.entity.Struct;
+import ch.hslu.cobau.minij.ast.expression.*;
+import ch.hslu.cobau.minij.ast.statement.*;
+import ch.hslu.cobau.minij.ast.type.ArrayType;
+import ch.hslu.cobau.minij.ast.type.RecordType;
+import ch.hslu.cobau.minij.ast.type.Type;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Structural hash of a function: its AST plus the signatures of the
+ * globals, records and functions it refers to. Two functions with the same
+ * fingerprint generate the same code.
+ */
+public class FunctionFingerprint extends BaseAstVisitor {
+
+    /**
+     * Global entities of a unit by name, collected once per unit.
+     */
+    public static class Globals {
+
+        private final Map<String, Declaration> declarations = new HashMap<>();
+        private final Map<String, List<Function>> functions = new HashMap<>();
+        private final Map<String, Struct> records = new HashMap<>();
+
+        public Globals(List<Declaration> declarations, List<Function> functions, List<Struct> records) {
+
+            declarations.forEach(d -> this.declarations.put(d.getIdentifier(), d));
+            functions.forEach(f -> this.functions.computeIfAbsent(f.getIdentifier(), k -> new ArrayList<>()).add(f));
+            records.forEach(r -> this.records.put(r.getIdentifier(), r));
+        }
+    }
+
+    private final Globals globals;
+    private final MessageDigest digest;
+    // what is hashed, collected first: the digest is slow on small updates
+    private byte[] bytes = new byte[1024];
+    private int length = 0;
+    private final Set<String> locals = new HashSet<>();
+    private final SortedSet<String> globalReferences = new TreeSet<>();
+    private final SortedSet<String> calls = new TreeSet<>();
+    private final SortedSet<String> records = new TreeSet<>();
+
+    private FunctionFingerprint(Globals globals) {
+
+        this.globals = globals;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String of(Function function, Globals globals) {
+
+        FunctionFingerprint fingerprint = new FunctionFingerprint(globals);
+        function.accept(fingerprint);
+        fingerprint.putReferences();
+
+        fingerprint.digest.update(fingerprint.bytes, 0, fingerprint.length);
+        return HexFormat.of().formatHex(fingerprint.digest.digest());
+    }
+
+    private void ensureCapacity(int capacity) {
+
+        if (capacity > bytes.length) {
+
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+    }
+
+    private void put(String s) {
+
+        byte[] encoded = s.getBytes(StandardCharsets.UTF_8);
+        put(encoded.length);
+        ensureCapacity(length + encoded.length);
+        System.arraycopy(encoded, 0, bytes, length, encoded.length);
+        length += encoded.length;
+    }
+
+    private void put(long value) {
+
+        ensureCapacity(length + 8);
+        for (int i = 0; i < 8; i++) {
+
+            bytes[length++] = (byte) (value >>> (i * 8));
+        }
+    }
+
+    private void put(Type type) {
+
+        put(type.toString());
+        while (type instanceof ArrayType a) {
+
+            type = a.getType();
+        }
+        if (type instanceof RecordType r) {
+
+            records.add(r.getIdentifier());
+        }
+    }
+
+    private void putReferences() {
+
+        put("globals");
+        for (String identifier : globalReferences) {
+
+            Declaration declaration = globals.declarations.get(identifier);
+            put(identifier);
+            if (declaration != null) {
+
+                put(declaration.getType());
+            }
+        }
+
+        put("calls");
+        for (String identifier : calls) {
+
+            put(identifier);
+            for (Function f : globals.functions.getOrDefault(identifier, List.of())) {
+
+                put(f.getReturnType());
+                f.getFormalParameters().forEach(p -> put(p.getType()));
+            }
+        }
+
+        put("records");
+        Set<String> done = new HashSet<>();
+        while (!records.isEmpty()) {
+
+            String identifier = records.first();
+            records.remove(identifier);
+            if (!done.add(identifier)) {
+
+                continue;
+            }
+
+            put(identifier);
+            Struct record = globals.records.get(identifier);
+            if (record != null) {
+
+                for (Declaration field : record.getDeclarations()) {
+
+                    put(field.getIdentifier());
+                    put(field.getType());
+                }
+            }
+            records.removeAll(done);
+        }
+    }
+
+    @Override
+    public void visit(Function function) {
+
+        put("function");
+        put(function.getIdentifier());
+        put(function.getReturnType());
+        put(function.getFormalParameters().size());
+        put(function.getStatements().size());
+        function.visitChildren(this);
+    }
+
+    @Override
+    public void visit(Declaration declaration) {
+
+        put("declaration");
+        put(declaration.getIdentifier());
+        put(declaration.getType());
+        put(declaration.isReference() ? 1 : 0);
+        locals.add(declaration.getIdentifier());
+    }
+
+    @Override
+    public void visit(DeclarationStatement declarationStatement) {
+
+        put("declarationStatement");
+        declarationStatement.visitChildren(this);
+    }
+
+    @Override
+    public void visit(IfStatement ifStatement) {
+
+        put("if");
+        put(ifStatement.getStatements().size());
+        put(ifStatement.getElseBlock() == null ? 0 : 1);
+        ifStatement.visitChildren(this);
+    }
+
+    @Override
+    public void visit(WhileStatement whileStatement) {
+
+        put("while");
+        put(whileStatement.getStatements().size());
+        whileStatement.visitChildren(this);
+    }
+
+    @Override
+    public void visit(ReturnStatement returnStatement) {
+
+        put("return");
+        put(returnStatement.getExpression() == null ? 0 : 1);
+        returnStatement.visitChildren(this);
+    }
+
+    @Override
+    public void visit(AssignmentStatement assignment) {
+
+        put("assignment");
+        assignment.visitChildren(this);
+    }
+
+    @Override
+    public void visit(CallStatement callStatement) {
+
+        put("callStatement");
+        callStatement.visitChildren(this);
+    }
+
+    @Override
+    public void visit(Block block) {
+
+        put("block");
+        put(block.getStatements().size());
+        block.visitChildren(this);
+    }
+
+    @Override
+    public void visit(UnaryExpression unaryExpression) {
+
+        put("unary");
+        put(unaryExpression.getUnaryOperator().name());
+        unaryExpression.visitChildren(this);
+    }
+
+    @Override
+    public void visit(BinaryExpression binaryExpression) {
+
+        put("binary");
+        put(binaryExpression.getBinaryOperator().name());
+        binaryExpression.visitChildren(this);
+    }
+
+    @Override
+    public void visit(CallExpression callExpression) {
+
+        put("call");
+        put(callExpression.getIdentifier());
+        put(callExpression.getParameters().size());
+        calls.add(callExpression.getIdentifier());
+        callExpression.visitChildren(this);
+    }
+
+    @Override
+    public void visit(VariableAccess variable) {
+
+        put("variable");
+        put(variable.getIdentifier());
+        if (!locals.contains(variable.getIdentifier())) {
+
+            globalReferences.add(variable.getIdentifier());
+        }
+    }
+
+    @Override
+    public void visit(ArrayAccess arrayAccess) {
+
+        put("array");
+        arrayAccess.visitChildren(this);
+    }
+
+    @Override
+    public void visit(FieldAccess fieldAccess) {
+
+        put("field");
+        put(fieldAccess.getField());
+        fieldAccess.visitChildren(this);
+    }
+
+    @Override
+    public void visit(FalseConstant falseConstant) {
+
+        put("false");
+    }
+
+    @Override
+    public void visit(IntegerConstant integerConstant) {
+
+        put("integer");
+        put(integerConstant.getValue());
+    }
+
+    @Override
+    public void visit(StringConstant stringConstant) {
+
+        put("string");
+        put(stringConstant.getValue());
+    }
+
+    @Override
+    public void visit(TrueConstant trueConstant) {
+
+        put("true");
+    }
+}
@@ -0,0 +1,83 @@
+package ch.hslu.cobau.minij;
+
+/**
+ * Map from non-negative ints, such as identifier ids, to objects. Keys and
+ * values are kept in parallel arrays with open addressing, so keys are not
+ * boxed.
+ */
+class IntMap<V> {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    // key + 1, so that 0 marks a free slot
+    private int[] keys = new int[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size = 0;
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+
+        int mask = keys.length - 1;
+        for (int i = IntSet.slot(key, mask); keys[i] != 0; i = (i + 1) & mask) {
+
+            if (keys[i] == key + 1) {
+
+                return (V) values[i];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return false if the key was already mapped, the old value stays
+     */
+    boolean putIfAbsent(int key, V value) {
+
+        if (get(key) != null) {
+
+            return false;
+        }
+
+        if ((size + 1) * 4 > keys.length * 3) {
+
+            grow();
+        }
+
+        insert(keys, values, key, value);
+        size++;
+        return true;
+    }
+
+    int size() {
+
+        return size;
+    }
+
+    private static void insert(int[] keys, Object[] values, int key, Object value) {
+
+        int mask = keys.length - 1;
+        int i = IntSet.slot(key, mask);
+        while (keys[i] != 0) {
+
+            i = (i + 1) & mask;
+        }
+        keys[i] = key + 1;
+        values[i] = value;
+    }
+
+    private void grow() {
+
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+
+            if (oldKeys[i] != 0) {
+
+                insert(keys, values, oldKeys[i] - 1, oldValues[i]);
+            }
+        }
+    }
+}
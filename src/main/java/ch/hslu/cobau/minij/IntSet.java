@@ -0,0 +1,81 @@
+package ch.hslu.cobau.minij;
+
+/**
+ * Set of non-negative ints, such as identifier ids, stored in one int array
+ * with open addressing and linear probing. Nothing is boxed.
+ */
+class IntSet {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    // value + 1, so that 0 marks a free slot
+    private int[] slots = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    // ids are dense, spread them over the table
+    static int slot(int value, int mask) {
+
+        int h = value * 0x9E3779B9;
+        return (h ^ h >>> 16) & mask;
+    }
+
+    boolean add(int value) {
+
+        if (contains(value)) {
+
+            return false;
+        }
+
+        if ((size + 1) * 4 > slots.length * 3) {
+
+            grow();
+        }
+
+        insert(slots, value);
+        size++;
+        return true;
+    }
+
+    boolean contains(int value) {
+
+        int mask = slots.length - 1;
+        for (int i = slot(value, mask); slots[i] != 0; i = (i + 1) & mask) {
+
+            if (slots[i] == value + 1) {
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    int size() {
+
+        return size;
+    }
+
+    private static void insert(int[] slots, int value) {
+
+        int mask = slots.length - 1;
+        int i = slot(value, mask);
+        while (slots[i] != 0) {
+
+            i = (i + 1) & mask;
+        }
+        slots[i] = value + 1;
+    }
+
+    private void grow() {
+
+        int[] old = slots;
+        slots = new int[old.length * 2];
+        for (int slot : old) {
+
+            if (slot != 0) {
+
+                insert(slots, slot - 1);
+            }
+        }
+    }
+}
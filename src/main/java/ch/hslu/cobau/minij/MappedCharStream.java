@@ -0,0 +1,191 @@
+package ch.hslu.cobau.minij;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Character stream that reads an ASCII source file straight from a memory
+ * mapping. For ASCII every byte is one code point, so the lexer indexes the
+ * mapped bytes directly and the file is never copied onto the heap. Files
+ * containing other characters are decoded as UTF-8 the usual way.
+ */
+public class MappedCharStream implements CharStream {
+
+    private static final long NON_ASCII = 0x8080808080808080L;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final String sourceName;
+    private int index = 0;
+
+    private MappedCharStream(ByteBuffer buffer, String sourceName) {
+
+        this.buffer = buffer;
+        this.size = buffer.limit();
+        this.sourceName = sourceName;
+    }
+
+    public static CharStream open(Path path) throws IOException {
+
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            if (channel.size() > Integer.MAX_VALUE) {
+
+                return CharStreams.fromPath(path);
+            }
+
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (!isAscii(buffer)) {
+
+            return CharStreams.fromPath(path);
+        }
+
+        return new MappedCharStream(buffer, path.toString());
+    }
+
+    /**
+     * Same as {@link #open} for a source that has already been read, e.g.
+     * for the cache key or from standard input.
+     */
+    public static CharStream wrap(byte[] source, String sourceName) {
+
+        ByteBuffer buffer = ByteBuffer.wrap(source);
+        if (!isAscii(buffer)) {
+
+            return CharStreams.fromString(new String(source, StandardCharsets.UTF_8), sourceName);
+        }
+
+        return new MappedCharStream(buffer, sourceName);
+    }
+
+    /**
+     * @return the bytes of the source, for lexers that read them directly
+     */
+    ByteBuffer getBuffer() {
+
+        return buffer;
+    }
+
+    private static boolean isAscii(ByteBuffer buffer) {
+
+        int length = buffer.limit();
+        int i = 0;
+
+        // eight bytes at a time, a set high bit in any of them is non-ASCII
+        ByteBuffer longs = buffer.duplicate().order(ByteOrder.nativeOrder());
+        for (; i + 8 <= length; i += 8) {
+
+            if ((longs.getLong(i) & NON_ASCII) != 0) {
+
+                return false;
+            }
+        }
+
+        for (; i < length; i++) {
+
+            if (buffer.get(i) < 0) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void consume() {
+
+        if (index >= size) {
+
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        index++;
+    }
+
+    @Override
+    public int LA(int i) {
+
+        if (i == 0) {
+
+            return 0;
+        }
+
+        int offset = i < 0 ? index + i : index + i - 1;
+        if (offset < 0 || offset >= size) {
+
+            return IntStream.EOF;
+        }
+
+        return buffer.get(offset);
+    }
+
+    @Override
+    public int mark() {
+
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+
+    }
+
+    @Override
+    public int index() {
+
+        return index;
+    }
+
+    @Override
+    public void seek(int index) {
+
+        this.index = index;
+    }
+
+    @Override
+    public int size() {
+
+        return size;
+    }
+
+    @Override
+    public String getSourceName() {
+
+        return sourceName;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+
+        int start = Math.max(0, interval.a);
+        int stop = Math.min(interval.b, size - 1);
+        if (stop < start) {
+
+            return "";
+        }
+
+        byte[] bytes = new byte[stop - start + 1];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+
+        return getText(Interval.of(0, size - 1));
+    }
+}
@@ -1,78 +1,425 @@
 package ch.hslu.cobau.minij;
 
 import ch.hslu.cobau.minij.ast.AstBuilder;
+import ch.hslu.cobau.minij.ast.AstParser;
 import ch.hslu.cobau.minij.ast.entity.Unit;
 import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
 import java.io.IOException;
-import java.text.Format;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MiniJCompiler {
 
+    private static final long DEFAULT_CACHE_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * Sources from this size on are parsed with the direct parser unless the
+     * generated one was asked for. It is faster at every size, but below this
+     * the difference is less than a millisecond.
+     */
+    static final int DIRECT_PARSER_THRESHOLD = 4 * 1024;
+
+    /**
+     * Options that influence the generated code and therefore belong into the
+     * cache key. Only leaving out unreachable functions does.
+     */
+    static String cacheOptions(boolean lazyBodies) {
+        return lazyBodies ? "lazy-bodies" : "";
+    }
+
+    private static final AtomicLong sllParses = new AtomicLong();
+    private static final AtomicLong llFallbacks = new AtomicLong();
+
     private static class EnhancedConsoleErrorListener extends ConsoleErrorListener {
-        private boolean hasErrors;
+        private final List<Diagnostic> errors = new ArrayList<>();
 
         @Override
         public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
-            super.syntaxError(recognizer, offendingSymbol, line, charPositionInLine, msg, e);
-            hasErrors = true;
+            errors.add(new Diagnostic(msg, line, charPositionInLine));
         }
 
         public boolean hasErrors() {
-            return hasErrors;
+            return !errors.isEmpty();
+        }
+
+        public List<Diagnostic> getErrors() {
+            return errors;
         }
     }
 
     public static void main(String[] args) throws IOException {    
+        List<String> inputFiles = new ArrayList<>();
+        String outputFile = null;
+        String outputDirectory = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String server = null;
+        String connect = null;
+        String cacheDirectory = null;
+        long cacheSize = DEFAULT_CACHE_SIZE;
+        boolean fastLexer = false;
+        boolean directParser = false;
+        boolean generatedParser = false;
+        boolean lazyBodies = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--server") && i + 1 < args.length) {
+                server = args[++i];
+            } else if (args[i].equals("--connect") && i + 1 < args.length) {
+                connect = args[++i];
+            } else if (args[i].equals("-o") && i + 1 < args.length) {
+                outputFile = args[++i];
+            } else if (args[i].equals("-d") && i + 1 < args.length) {
+                outputDirectory = args[++i];
+            } else if (args[i].equals("-j") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--cache-dir") && i + 1 < args.length) {
+                cacheDirectory = args[++i];
+            } else if (args[i].equals("--cache-size") && i + 1 < args.length) {
+                cacheSize = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--fast-lexer")) {
+                fastLexer = true;
+            } else if (args[i].equals("--direct-parser")) {
+                directParser = true;
+            } else if (args[i].equals("--generated-parser")) {
+                generatedParser = true;
+            } else if (args[i].equals("--lazy-bodies")) {
+                directParser = true;
+                lazyBodies = true;
+            } else {
+                inputFiles.add(args[i]);
+            }
+        }
+
+        if (server != null) {
+            CompileServer compileServer = isPort(server)
+                    ? CompileServer.bind(Integer.parseInt(server))
+                    : CompileServer.bind(Path.of(server));
+            compileServer.serve();
+            return;
+        }
+        if (connect != null && inputFiles.size() <= 1 && cacheDirectory == null) {
+            CompileClient client = new CompileClient(isPort(connect)
+                    ? CompileServer.address(Integer.parseInt(connect))
+                    : CompileServer.address(Path.of(connect)));
+            client.setFastLexer(fastLexer);
+            client.setDirectParser(directParser);
+            client.setGeneratedParser(generatedParser);
+            client.setLazyBodies(lazyBodies);
+            int exitStatus = client.compile(inputFiles.isEmpty() ? null : inputFiles.get(0), outputFile);
+            if (exitStatus != 0) {
+                System.exit(exitStatus);
+            }
+            return;
+        }
+        DiskCache cache = cacheDirectory == null ? null : new DiskCache(Path.of(cacheDirectory), cacheSize);
+        if (outputDirectory != null) {
+            List<Path> inputs = new ArrayList<>();
+            inputFiles.forEach(f -> inputs.add(Path.of(f)));
+            BatchCompiler batchCompiler = new BatchCompiler(Path.of(outputDirectory), threads);
+            batchCompiler.setCache(cache);
+            batchCompiler.setFastLexer(fastLexer);
+            batchCompiler.setDirectParser(directParser);
+            batchCompiler.setGeneratedParser(generatedParser);
+            batchCompiler.setLazyBodies(lazyBodies);
+            System.exit(batchCompiler.run(inputs));
+        }
+        // --cache-dir does not go with --connect, the server would never see
+        // the cache on this side
+        if (inputFiles.size() > 1 || connect != null) {
+            System.err.println("usage: MiniJCompiler [--fast-lexer|--direct-parser|--generated-parser|--lazy-bodies] [--cache-dir <directory> [--cache-size <bytes>]] [-o <file>] [<file>]");
+            System.err.println("       MiniJCompiler --connect <socket>|<port> [--fast-lexer|--direct-parser|--generated-parser|--lazy-bodies] [-o <file>] [<file>]");
+            System.err.println("       MiniJCompiler -d <directory> [-j <threads>] [--fast-lexer|--direct-parser|--generated-parser|--lazy-bodies] [--cache-dir <directory>] <file>...");
+            System.err.println("       MiniJCompiler --server <socket>|<port>");
+            System.exit(2);
+        }
+
         // initialize lexer and parser
         CharStream charStream;
-        if (args.length > 0) {
-            charStream = CharStreams.fromFileName(args[0]);
+        String key = null;
+        if (cache != null) {
+            byte[] source = !inputFiles.isEmpty()
+                    ? Files.readAllBytes(Path.of(inputFiles.get(0)))
+                    : System.in.readAllBytes();
+            key = cache.key(source, cacheOptions(lazyBodies));
+            if (writeCached(cache, key, outputFile)) {
+                return;
+            }
+            charStream = MappedCharStream.wrap(source,
+                    inputFiles.isEmpty() ? IntStream.UNKNOWN_SOURCE_NAME : inputFiles.get(0));
+        } else if (!inputFiles.isEmpty()) {
+            charStream = MappedCharStream.open(Path.of(inputFiles.get(0)));
         } else {
-            charStream = CharStreams.fromStream(System.in);
+            charStream = MappedCharStream.wrap(System.in.readAllBytes(), IntStream.UNKNOWN_SOURCE_NAME);
         }
 
-        MiniJLexer miniJLexer = new MiniJLexer(charStream);
-        CommonTokenStream commonTokenStream = new CommonTokenStream(miniJLexer);
-        MiniJParser miniJParser = new MiniJParser(commonTokenStream);
+        CompilationContext context = new CompilationContext();
+        context.setFastLexer(fastLexer);
+        context.setDirectParser(directParser);
+        context.setGeneratedParser(generatedParser);
+        context.setLazyBodies(lazyBodies);
+        // a file that changed in a few functions reuses the code of the others
+        Path sourceFile = cache != null && !inputFiles.isEmpty() ? Path.of(inputFiles.get(0)) : null;
+        if (sourceFile != null) {
+            context.setFunctionCache(FunctionCache.load(cache, sourceFile));
+        }
+        CompilationResult result = compile(charStream, context);
+        result.getSyntaxErrors().forEach(System.err::println);
+        result.getErrors().forEach(System.out::println);
+        if (!result.isSuccess()) {
+            System.exit(result.getExitStatus());
+        }
 
-        EnhancedConsoleErrorListener errorListener = new EnhancedConsoleErrorListener();
-        miniJParser.removeErrorListeners();
-        miniJParser.addErrorListener(errorListener);
+        // a cache hit only replays the code, so the lexer errors printed
+        // above would be lost on the next run
+        if (cache != null && !result.hasLexerErrors()) {
+            cache.store(key, result.getCode());
+            if (sourceFile != null) {
+                context.getFunctionCache().store(cache, sourceFile);
+            }
+        }
 
-        // start parsing at outermost level (milestone 2)
-        MiniJParser.UnitContext unitContext = miniJParser.unit();
-        if (errorListener.hasErrors()) {
+        if (outputFile != null) {
+            writeCode(result.getCode(), Path.of(outputFile));
+        } else {
+            WritableByteChannel out = Channels.newChannel(System.out);
+            writeCode(result.getCode(), out);
+            System.out.flush();
+        }
+    }
+
+    private static boolean writeCached(DiskCache cache, String key, String outputFile) throws IOException {
+        if (outputFile == null) {
+            boolean hit = cache.writeTo(key, Channels.newChannel(System.out));
+            System.out.flush();
+            return hit;
+        }
+
+        // only create the output file when there is something to write into it
+        Path output = Path.of(outputFile);
+        Path temp = Files.createTempFile(output.toAbsolutePath().getParent(), output.getFileName().toString(), ".tmp");
+        try {
+            boolean hit;
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                hit = cache.writeTo(key, out);
+            }
+            if (hit) {
+                Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return hit;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Runs the whole pipeline on one source. Every call works on its own
+     * lexer, parser, symbol table and code buffer, so independent sources can
+     * be compiled on different threads of the same JVM.
+     */
+    public static CompilationResult compile(CharStream charStream) {
+        return compile(charStream, new CompilationContext());
+    }
+
+    public static CompilationResult compile(CharStream charStream, CompilationContext context) {
+        // the lexer errors go into the result instead of straight to stderr,
+        // so that batch mode and the server report them like the rest
+        EnhancedConsoleErrorListener lexerErrors = new EnhancedConsoleErrorListener();
+        return compile(charStream, context, lexerErrors).withLexerErrors(lexerErrors.getErrors());
+    }
+
+    private static CompilationResult compile(CharStream charStream, CompilationContext context,
+                                             EnhancedConsoleErrorListener lexerErrors) {
+        boolean directParser = context.isDirectParser() ||
+                !context.isGeneratedParser() && charStream.size() >= DIRECT_PARSER_THRESHOLD;
+        FastLexer fastLexer = fastLexer(charStream, context.isFastLexer() || directParser);
 
-            System.exit(1);
+        // the direct parser leaves input it does not accept to the generated
+        // parser, which reports the syntax errors
+        Unit u = null;
+        if (fastLexer != null && directParser) {
+            try {
+                AstParser astParser = new AstParser(fastLexer);
+                astParser.setLazyBodies(context.isLazyBodies());
+                u = astParser.parse();
+            } catch (RuntimeException e) {
+                return internalError(e);
+            }
+        }
+
+        if (u == null) {
+            TokenSource tokenSource;
+            if (fastLexer != null) {
+                tokenSource = new FastTokenSource(fastLexer, charStream);
+            } else {
+                MiniJLexer miniJLexer = new MiniJLexer(charStream);
+                miniJLexer.removeErrorListeners();
+                miniJLexer.addErrorListener(lexerErrors);
+                tokenSource = miniJLexer;
+            }
+            CommonTokenStream commonTokenStream = new CommonTokenStream(tokenSource);
+            MiniJParser miniJParser = new MiniJParser(commonTokenStream);
+
+            EnhancedConsoleErrorListener errorListener = new EnhancedConsoleErrorListener();
+
+            // start parsing at outermost level (milestone 2)
+            try {
+                u = parse(miniJParser, commonTokenStream, errorListener);
+            } catch (RuntimeException e) {
+                return internalError(e);
+            }
+            if (errorListener.hasErrors()) {
+
+                return CompilationResult.syntaxErrors(errorListener.getErrors());
+            }
         }
 
-        //printUnitContext(unitContext);
         // semantic check (milestone 3)
 
+        try {
+            FirstPassVisitor v = new FirstPassVisitor(context);
+            u.accept(v);
+
+            u.accept(new BindingVisitor(v.getSymbolTable()));
+
+            SecondPassVisitor v2 = new SecondPassVisitor(v.getSymbolTable());
+            u.accept(v2);
+
+            // code generation (milestone 4)
+
+            CodeGenerator cg = new CodeGenerator(v.getSymbolTable());
+            u.accept(cg);
+
+            return CompilationResult.success(cg.getCode());
+        } catch (CompilationException e) {
+            List<Diagnostic> errors = context.getDiagnostics();
+            if (errors.isEmpty()) {
+                errors = List.of(new Diagnostic(e.getMessage()));
+            }
+            return CompilationResult.errors(errors, e.getExitStatus());
+        } catch (RuntimeException e) {
+            return internalError(e);
+        }
+    }
+
+    // a defect in the compiler must not take down a batch or the server
+    private static CompilationResult internalError(RuntimeException e) {
+        return CompilationResult.errors(List.of(new Diagnostic("Internal compiler error: " + e)), 1);
+    }
+
+    /**
+     * Lexes with the hand-written lexer if it or the direct parser is used
+     * and the source is an ASCII buffer.
+     *
+     * @return the tokens, or null if the generated lexer has to be used,
+     *         also for sources the hand-written one cannot lex completely as
+     *         the generated lexer reports the errors
+     */
+    private static FastLexer fastLexer(CharStream charStream, boolean selected) {
+        if (selected && charStream instanceof MappedCharStream mapped) {
+            FastLexer fastLexer = new FastLexer(mapped.getBuffer());
+            if (!fastLexer.hasErrors()) {
+                return fastLexer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses with SLL prediction first, which is enough for almost every
+     * input and much cheaper on the left-recursive expression rules. In that
+     * pass the AST is built by a parse listener and no parse tree is kept.
+     * Only if it fails the input is parsed again with full LL prediction and
+     * the normal error reporting, so syntax errors stay exactly the same.
+     * That pass builds the parse tree and the AST is built from it only if
+     * there were no errors.
+     *
+     * @return the AST, or null if there were syntax errors
+     */
+    private static Unit parse(MiniJParser miniJParser, CommonTokenStream tokens,
+                              EnhancedConsoleErrorListener errorListener) {
         AstBuilder astBuilder = new AstBuilder();
-        unitContext.accept(astBuilder);
+        miniJParser.removeErrorListeners();
+        miniJParser.setErrorHandler(new BailErrorStrategy());
+        miniJParser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        miniJParser.setBuildParseTree(false);
+        miniJParser.addParseListener(astBuilder);
+        try {
+            miniJParser.unit();
+            sllParses.incrementAndGet();
+            return astBuilder.getUnit();
+        } catch (RuntimeException e) {
+            // besides a syntax error this may be the builder failing on the
+            // input, that is only reported if there are no syntax errors
+            llFallbacks.incrementAndGet();
+        }
+
+        tokens.seek(0);
+        miniJParser.reset();
+        // a builder failing while the rules unwind leaves the parser in the
+        // state of the inner rule, which reset() does not clear
+        miniJParser.setState(ATNState.INVALID_STATE_NUMBER);
+        miniJParser.removeParseListeners();
+        miniJParser.setBuildParseTree(true);
+        miniJParser.addErrorListener(errorListener);
+        miniJParser.setErrorHandler(new DefaultErrorStrategy());
+        miniJParser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        MiniJParser.UnitContext unitContext = miniJParser.unit();
+        if (errorListener.hasErrors()) {
+            return null;
+        }
 
-        Unit u = astBuilder.getUnit();
+        astBuilder = new AstBuilder();
+        ParseTreeWalker.DEFAULT.walk(astBuilder, unitContext);
+        return astBuilder.getUnit();
+    }
+
+    /**
+     * @return number of sources parsed completely in SLL mode
+     */
+    public static long getSllParses() {
+        return sllParses.get();
+    }
+
+    /**
+     * @return number of sources that had to be parsed again in LL mode
+     */
+    public static long getLlFallbacks() {
+        return llFallbacks.get();
+    }
 
-        FirstPassVisitor v = new FirstPassVisitor();
-        u.accept(v);
+    static String parseStatistics() {
+        return "parser: " + getSllParses() + " SLL parses, " + getLlFallbacks() + " LL fallbacks";
+    }
 
-        SecondPassVisitor v2 = new SecondPassVisitor(v.getSymbolTable());
-        u.accept(v2);
+    private static boolean isPort(String address) {
 
-        // code generation (milestone 4)
+        return address.chars().allMatch(Character::isDigit);
+    }
 
-        CodeGenerator cg = new CodeGenerator(v.getSymbolTable());
-        u.accept(cg);
-        System.out.println(cg.getCode());
+    static void writeCode(Code code, Path outputFile) throws IOException {
 
+        try (FileChannel out = FileChannel.open(outputFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeCode(code, out);
+        }
     }
 
-    public static void printErrorAndExit(String errorMessage) {
+    static void writeCode(Code code, WritableByteChannel out) throws IOException {
 
-        System.out.println(errorMessage);
-        System.exit(1);
+        code.writeTo(out);
+        out.write(ByteBuffer.wrap(System.lineSeparator().getBytes(StandardCharsets.US_ASCII)));
     }
 }
@@ -0,0 +1,91 @@
+package ch.hslu.cobau.minij;
+
+import ch.hslu.cobau.minij.ast.entity.Declaration;
+import ch.hslu.cobau.minij.ast.entity.Struct;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Memory layout of a record: its size and alignment and the byte offset of
+ * every field. Fields are placed in declaration order, each aligned to its
+ * own alignment. Record, string and array fields hold a reference. The
+ * layout is computed once by {@link BindingVisitor}, field lookups are constant time.
+ */
+public class RecordLayout {
+
+    private final Struct record;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final int[] offsets;
+    private final int size;
+    private final int alignment;
+
+    RecordLayout(Struct record, int[] sizes, int[] alignments) {
+
+        this.record = record;
+
+        List<Declaration> fields = record.getDeclarations();
+        offsets = new int[fields.size()];
+
+        int offset = 0;
+        int alignment = 1;
+        for (int i = 0; i < fields.size(); i++) {
+
+            indexes.putIfAbsent(fields.get(i).getIdentifier(), i);
+            offset = align(offset, alignments[i]);
+            offsets[i] = offset;
+            offset += sizes[i];
+            alignment = Math.max(alignment, alignments[i]);
+        }
+
+        this.size = align(offset, alignment);
+        this.alignment = alignment;
+    }
+
+    private static int align(int offset, int alignment) {
+
+        return (offset + alignment - 1) / alignment * alignment;
+    }
+
+    public Struct getRecord() {
+
+        return record;
+    }
+
+    public int getSize() {
+
+        return size;
+    }
+
+    public int getAlignment() {
+
+        return alignment;
+    }
+
+    /**
+     * @return the position of the field in the record, or -1 if there is no
+     *         field with that name
+     */
+    public int getIndex(String field) {
+
+        Integer index = indexes.get(field);
+        return index != null ? index : -1;
+    }
+
+    public Declaration getField(String field) {
+
+        int index = getIndex(field);
+        return index >= 0 ? record.getDeclarations().get(index) : null;
+    }
+
+    /**
+     * @return the byte offset of the field from the start of the record, or
+     *         -1 if there is no field with that name
+     */
+    public int getOffset(String field) {
+
+        int index = getIndex(field);
+        return index >= 0 ? offsets[index] : -1;
+    }
+}
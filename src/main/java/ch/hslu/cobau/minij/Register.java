@@ -19,12 +19,10 @@ public enum Register {
     RSP("rsp");
 
     public final String name;
-    public boolean inUse;
 
     private Register(String name) {
 
         this.name = name;
-        inUse = false;
     }
 
     public String asAddress(int offset) {
@@ -37,67 +35,4 @@ public enum Register {
         return "[" + name + "-" + offset + "]";
     }
 
-    public static Register getFreeRegister() {
-
-        for (Register r : Register.values()) {
-
-            if (r == Register.RBP) {
-
-                return null;
-            }
-            else if (!r.inUse) {
-
-                return r;
-            }
-        }
-
-        return null;
-    }
-
-    public static Register getFreeRegister(Register desired) {
-
-        boolean latched = false;
-        int lastIndex = 0;
-        for (int i = 0; i <  Register.values().length; i++) {
-
-            Register r = Register.values()[i];
-            if (r == desired) {
-
-                lastIndex = i;
-                latched = true;
-            }
-
-            if (latched) {
-
-                if (r == Register.RBP) {
-
-                    break;
-                }
-                else if (!r.inUse) {
-
-                    return r;
-                }
-
-            }
-
-        }
-
-        for (int i = 0; i < lastIndex; i++) {
-
-            Register r = Register.values()[i];
-
-            if (r == Register.RBP) {
-
-                continue;
-            }
-            else if (!r.inUse) {
-
-                return r;
-            }
-
-        }
-
-        return null;
-    }
-
 }
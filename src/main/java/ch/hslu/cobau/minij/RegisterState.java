@@ -0,0 +1,96 @@
+package ch.hslu.cobau.minij;
+
+import java.util.EnumSet;
+
+/**
+ * Tracks which registers are taken while code for one function is generated.
+ */
+public class RegisterState {
+
+    private final EnumSet<Register> inUse = EnumSet.noneOf(Register.class);
+
+    public boolean isInUse(Register register) {
+
+        return inUse.contains(register);
+    }
+
+    public void setInUse(Register register, boolean used) {
+
+        if (used) {
+
+            inUse.add(register);
+        }
+        else {
+
+            inUse.remove(register);
+        }
+    }
+
+    public void releaseAll() {
+
+        inUse.clear();
+    }
+
+    public Register getFreeRegister() {
+
+        for (Register r : Register.values()) {
+
+            if (r == Register.RBP) {
+
+                return null;
+            }
+            else if (!isInUse(r)) {
+
+                return r;
+            }
+        }
+
+        return null;
+    }
+
+    public Register getFreeRegister(Register desired) {
+
+        boolean latched = false;
+        int lastIndex = 0;
+        for (int i = 0; i <  Register.values().length; i++) {
+
+            Register r = Register.values()[i];
+            if (r == desired) {
+
+                lastIndex = i;
+                latched = true;
+            }
+
+            if (latched) {
+
+                if (r == Register.RBP) {
+
+                    break;
+                }
+                else if (!isInUse(r)) {
+
+                    return r;
+                }
+
+            }
+
+        }
+
+        for (int i = 0; i < lastIndex; i++) {
+
+            Register r = Register.values()[i];
+
+            if (r == Register.RBP) {
+
+                continue;
+            }
+            else if (!isInUse(r)) {
+
+                return r;
+            }
+
+        }
+
+        return null;
+    }
+}
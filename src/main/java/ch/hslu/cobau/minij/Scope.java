@@ -1,16 +1,27 @@
 package ch.hslu.cobau.minij;
 
 import ch.hslu.cobau.minij.ast.AstElement;
-
-import java.util.*;
-import java.util.function.BiConsumer;
-import java.util.function.BiFunction;
-
+import ch.hslu.cobau.minij.ast.entity.Declaration;
+import ch.hslu.cobau.minij.ast.entity.Function;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A node in the scope tree. Besides the names declared in it, every scope
+ * indexes its declarations by identifier, so a lookup only visits the scopes
+ * on the way to the global scope. Names are the int ids handed out by
+ * {@link ch.hslu.cobau.minij.ast.Identifiers}.
+ */
 public class Scope {
 
-    Set<String> symbols = new HashSet<>();
+    IntSet symbols = new IntSet();
     Scope parent = null;
 
+    private final IntMap<Declaration> declarations = new IntMap<>();
+    private final List<Declaration> declarationOrder = new ArrayList<>();
+    private Function function = null;
+
     public Scope() {
 
     }
@@ -21,17 +32,17 @@ public class Scope {
         this.parent = parent;
     }
 
-    public void addSymbol(String symbol) {
+    public void addSymbol(int symbol) {
 
         symbols.add(symbol);
     }
 
-    public boolean hasSymbol(String symbol) {
+    public boolean hasSymbol(int symbol) {
 
         return symbols.contains(symbol);
     }
 
-    public boolean hasSymbolInSelfOrParent(String symbol) {
+    public boolean hasSymbolInSelfOrParent(int symbol) {
 
         if (hasSymbol(symbol))
             return true;
@@ -48,7 +59,7 @@ public class Scope {
         return false;
     }
 
-    public Scope getScopeOfIdentifier(String identifier) {
+    public Scope getScopeOfIdentifier(int identifier) {
 
         Scope scope = this;
         do {
@@ -57,7 +68,7 @@ public class Scope {
                 break;
             }
 
-            scope = parent;
+            scope = scope.parent;
         } while(scope != null);
 
         return scope;
@@ -67,6 +78,54 @@ public class Scope {
         return parent;
     }
 
+    void addDeclaration(int identifier, Declaration declaration) {
+
+        if (declarations.putIfAbsent(identifier, declaration)) {
+
+            declarationOrder.add(declaration);
+        }
+    }
+
+    public Declaration lookupDeclaration(int identifier) {
+
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+
+            Declaration declaration = scope.declarations.get(identifier);
+            if (declaration != null) {
+
+                return declaration;
+            }
+        }
+
+        return null;
+    }
+
+    public List<Declaration> getDeclarations() {
+
+        return new ArrayList<>(declarationOrder);
+    }
+
+    void setFunction(Function function) {
+
+        this.function = function;
+    }
+
+    /**
+     * @return the function this scope or the closest enclosing scope belongs to
+     */
+    public Function getFunction() {
+
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+
+            if (scope.function != null) {
+
+                return scope.function;
+            }
+        }
+
+        return null;
+    }
+
     @Override
     public boolean equals(Object obj) {
 
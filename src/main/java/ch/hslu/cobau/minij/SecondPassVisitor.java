@@ -13,15 +13,72 @@ import ch.hslu.cobau.minij.ast.type.*;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Type checks the unit. Globals are checked first, then the function bodies
+ * are checked in parallel: they only read what the earlier passes collected.
+ * Each task checks a contiguous run of functions with its own context for
+ * the return type hint and the diagnostics, and the diagnostics are merged
+ * in source order, so the result does not depend on scheduling.
+ */
 public class SecondPassVisitor  implements AstVisitor {
 
+    // tasks per worker, so that uneven functions still balance
+    private static final int TASKS_PER_THREAD = 4;
+
+    private final CompilationContext context;
+    private final ForkJoinPool pool;
     private SymbolTable symbolTable;
     private Scope currentScope;
 
     public SecondPassVisitor(SymbolTable symbolTable) {
 
+        this(symbolTable, ForkJoinPool.commonPool());
+    }
+
+    public SecondPassVisitor(SymbolTable symbolTable, ForkJoinPool pool) {
+
+        this(symbolTable, symbolTable.getContext(), pool);
+    }
+
+    private SecondPassVisitor(SymbolTable symbolTable, CompilationContext context, ForkJoinPool pool) {
+
         this.symbolTable = symbolTable;
+        this.context = context;
+        this.pool = pool;
+    }
+
+    /**
+     * Checks the functions in order, except the ones found in the function
+     * cache, and only the parameters of the ones with a skipped body. An error ends the check of its function only, every function
+     * starts without a return type hint.
+     *
+     * @return the first error, or null
+     */
+    private CompilationException check(List<Function> functions, CompilationContext taskContext) {
+
+        SecondPassVisitor visitor = new SecondPassVisitor(symbolTable, taskContext, pool);
+        CompilationException first = null;
+        for (Function function : functions) {
+
+            if (symbolTable.getCachedCode(function) != null) {
+
+                continue;
+            }
+
+            taskContext.setTypeToLookFor(null);
+            try {
+                function.accept(visitor);
+            } catch (CompilationException e) {
+                if (first == null) {
+                    first = e;
+                }
+            }
+        }
+
+        return first;
     }
 
     private void removeBuiltInFunctions(Unit program) {
@@ -49,7 +106,40 @@ public class SecondPassVisitor  implements AstVisitor {
     public void visit(Unit program) {
 
         currentScope = symbolTable.getGlobalScope();
-        program.visitChildren(this);
+        program.getGlobals().forEach(global -> global.accept(this));
+
+        List<Function> functions = program.getFunctions();
+        int tasks = Math.max(1, Math.min(functions.size(), pool.getParallelism() * TASKS_PER_THREAD));
+        int perTask = (functions.size() + tasks - 1) / Math.max(1, tasks);
+
+        List<CompilationContext> contexts = new ArrayList<>();
+        List<ForkJoinTask<CompilationException>> checks = new ArrayList<>();
+        for (int start = 0; start < functions.size(); start += perTask) {
+
+            List<Function> run = functions.subList(start, Math.min(functions.size(), start + perTask));
+            CompilationContext taskContext = context.fork();
+            contexts.add(taskContext);
+            checks.add(pool.submit(() -> check(run, taskContext)));
+        }
+
+        CompilationException first = null;
+        for (int i = 0; i < checks.size(); i++) {
+
+            CompilationException e = checks.get(i).join();
+            context.getDiagnostics().addAll(contexts.get(i).getDiagnostics());
+            if (first == null) {
+
+                first = e;
+            }
+        }
+
+        if (first != null) {
+
+            throw first;
+        }
+
+        program.getStructs().forEach(struct -> struct.accept(this));
+        context.abortOnErrors();
 
         removeBuiltInFunctions(program);
     }
@@ -57,8 +147,14 @@ public class SecondPassVisitor  implements AstVisitor {
     @Override
     public void visit(Function function) {
 
+        if (function.isBodySkipped()) {
+
+            function.getFormalParameters().forEach(parameter -> parameter.accept(this));
+        }
+        else {
 
-        function.visitChildren(this);
+            function.visitChildren(this);
+        }
     }
 
     @Override
@@ -66,9 +162,10 @@ public class SecondPassVisitor  implements AstVisitor {
 
         if (declaration.getType() instanceof RecordType t) {
 
-            if (!symbolTable.getGlobalScope().hasSymbol(t.getIdentifier())) {
+            int name = symbolTable.getIdentifiers().lookup(t.getIdentifier());
+            if (name < 0 || !symbolTable.getGlobalScope().hasSymbol(name)) {
 
-                MiniJCompiler.printErrorAndExit("Undefined record " + t.getIdentifier());
+                context.report("Undefined record " + t.getIdentifier(), declaration);
             }
         }
 
@@ -78,7 +175,7 @@ public class SecondPassVisitor  implements AstVisitor {
     @Override
     public void visit(Struct record) {
 
-        currentScope.addSymbol(record.getIdentifier());
+        currentScope.addSymbol(symbolTable.nameOf(record, record.getIdentifier()));
         currentScope = symbolTable.addScope(currentScope, record);
         record.visitChildren(this);
         currentScope = currentScope.getParent();
@@ -87,9 +184,10 @@ public class SecondPassVisitor  implements AstVisitor {
     @Override
     public void visit(IfStatement ifStatement) {
 
-        if (!Expression.evaluateType(ifStatement.getExpression(), symbolTable).equals(new BooleanType())) {
+        context.setTypeToLookFor(TypePool.BOOLEAN);
+        if (Expression.evaluateType(ifStatement.getExpression(), symbolTable, context) != TypePool.BOOLEAN) {
 
-            MiniJCompiler.printErrorAndExit("Boolean expression expected in if statement");
+            context.error("Boolean expression expected in if statement", ifStatement);
         }
 
         ifStatement.visitChildren(this);
@@ -98,9 +196,10 @@ public class SecondPassVisitor  implements AstVisitor {
     @Override
     public void visit(WhileStatement whileStatement) {
 
-        if (!Expression.evaluateType(whileStatement.getExpression(), symbolTable).equals(new BooleanType())) {
+        context.setTypeToLookFor(TypePool.BOOLEAN);
+        if (Expression.evaluateType(whileStatement.getExpression(), symbolTable, context) != TypePool.BOOLEAN) {
 
-            MiniJCompiler.printErrorAndExit("Boolean expression expected in while statement");
+            context.error("Boolean expression expected in while statement", whileStatement);
         }
 
         whileStatement.visitChildren(this);
@@ -115,12 +214,13 @@ public class SecondPassVisitor  implements AstVisitor {
 
 
         Type returnType = function.getReturnType();
+        context.setTypeToLookFor(returnType);
 
-        boolean correctType = Expression.evaluateType(expression, symbolTable).equals(returnType);
+        boolean correctType = Expression.evaluateType(expression, symbolTable, context) == returnType;
 
         if (!correctType) {
 
-            MiniJCompiler.printErrorAndExit("Returned value does not match return type of function: " + function.getIdentifier());
+            context.error("Returned value does not match return type of function: " + function.getIdentifier(), returnStatement);
         }
         returnStatement.visitChildren(this);
     }
@@ -128,15 +228,15 @@ public class SecondPassVisitor  implements AstVisitor {
     @Override
     public void visit(AssignmentStatement assignment) {
 
-        Type left = Expression.evaluateType(assignment.getLeft(), symbolTable);
-        Expression.typeToLookFor = left;
-        Type right = Expression.evaluateType(assignment.getRight(), symbolTable);
+        Type left = Expression.evaluateType(assignment.getLeft(), symbolTable, context);
+        context.setTypeToLookFor(left);
+        Type right = Expression.evaluateType(assignment.getRight(), symbolTable, context);
 
 
-        if (!left.equals(right)) {
+        if (left != right) {
 
-            MiniJCompiler.printErrorAndExit("Type mismatch in assignment: " +
-                    left.toString() + " = " + right.toString());
+            context.error("Type mismatch in assignment: " +
+                    left.toString() + " = " + right.toString(), assignment);
         }
 
         assignment.visitChildren(this);
@@ -151,47 +251,15 @@ public class SecondPassVisitor  implements AstVisitor {
     @Override
     public void visit(CallStatement callStatement) {
 
-
+        // the value is not used, any return type will do
         CallExpression call = callStatement.getCallExpression();
-        List<Expression> params = call.getParameters();
-
-        List<Function> functions =  symbolTable.getAllFunctionsByName(call.getIdentifier());
-
-
-        boolean found = false;
-        for (Function f : functions) {
-
-            if (!call.getIdentifier().equals(f.getIdentifier()))
-                continue;
-            if (!f.matchesParameters(params, symbolTable))
-                continue;
-
-            List<Declaration> args = f.getFormalParameters();
-            if (args.size() != params.size())
-                continue;
-
-            for (int i = 0; i < params.size(); i++) {
+        context.setTypeToLookFor(null);
+        if (Expression.resolveCall(call, symbolTable, context) == null) {
 
-                Expression param = params.get(i);
-                Declaration arg = args.get(i);
-                boolean correctType = arg.getType().equals(Expression.evaluateType(param, symbolTable));
-
-                if (!correctType) {
-
-                    MiniJCompiler.printErrorAndExit("Type mismatch in function call " + f.toString());
-                }
-
-            }
-            found = true;
-        }
-
-        if (!found) {
-
-            MiniJCompiler.printErrorAndExit("Unresolved call to function: " + call.getIdentifier());
+            context.error("Unresolved call to function: " + call.getIdentifier(), callStatement);
         }
 
         callStatement.visitChildren(this);
-
     }
 
     @Override
@@ -223,10 +291,9 @@ public class SecondPassVisitor  implements AstVisitor {
     public void visit(VariableAccess variable) {
 
 
-        Scope scope = symbolTable.getScope(variable);
-        if (scope == null || !scope.hasSymbolInSelfOrParent(variable.getIdentifier())) {
+        if (variable.getSymbol() == null) {
 
-            MiniJCompiler.printErrorAndExit("Accessing undefined variable: " + variable.getIdentifier());
+            context.error("Accessing undefined variable: " + variable.getIdentifier(), variable);
         }
 
         variable.visitChildren(this);
@@ -241,26 +308,12 @@ public class SecondPassVisitor  implements AstVisitor {
     @Override
     public void visit(FieldAccess fieldAccess) {
 
-        String identifier = fieldAccess.getField();
         VariableAccess variable = (VariableAccess) fieldAccess.getBase();
-        Declaration d = symbolTable.getDeclaration(variable.getIdentifier());
-
-        Struct s = symbolTable.getStruct(((RecordType) d.getType()).getIdentifier());
-
-        List<Declaration> fields = s.getDeclarations();
-        boolean found = false;
-        for (Declaration dec : fields) {
-
-            if (dec.getIdentifier().equals(identifier)) {
-
-                found = true;
-                break;
-            }
-        }
+        Symbol base = variable.getSymbol();
 
-        if (!found) {
+        if (fieldAccess.getSymbol() == null && base != null && base.getType() instanceof RecordType record) {
 
-            MiniJCompiler.printErrorAndExit("No field " + identifier + " on record " + s.getIdentifier());
+            context.error("No field " + fieldAccess.getField() + " on record " + record.getIdentifier(), fieldAccess);
         }
 
         fieldAccess.visitChildren(this);
@@ -0,0 +1,236 @@
+package ch.hslu.cobau.minij;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only buffer for one assembly section. The text is kept as a list of
+ * fragments: fixed size byte chunks and placeholders that can be filled with
+ * another section later on. Appending never copies what was emitted before,
+ * filling a placeholder is O(1) and the fragments are streamed in order.
+ */
+public class Section {
+
+    static final int FIRST_CHUNK_SIZE = 256;
+    static final int CHUNK_SIZE = 16 * 1024;
+
+    private static abstract class Fragment {
+
+        abstract long length();
+        abstract void writeTo(WritableByteChannel channel) throws IOException;
+        abstract void writeTo(ByteArrayOutputStream out);
+    }
+
+    private static class Chunk extends Fragment {
+
+        final byte[] bytes;
+        int length = 0;
+
+        Chunk(int capacity) {
+
+            bytes = new byte[capacity];
+        }
+
+        boolean isFull() {
+
+            return length == bytes.length;
+        }
+
+        @Override
+        long length() {
+
+            return length;
+        }
+
+        @Override
+        void writeTo(WritableByteChannel channel) throws IOException {
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+            while (buffer.hasRemaining()) {
+
+                channel.write(buffer);
+            }
+        }
+
+        @Override
+        void writeTo(ByteArrayOutputStream out) {
+
+            out.write(bytes, 0, length);
+        }
+    }
+
+    public static class Placeholder extends Fragment {
+
+        private Section content;
+
+        private Placeholder() {
+
+        }
+
+        public void fill(Section section) {
+
+            if (content != null) {
+
+                throw new IllegalStateException("Placeholder has already been filled");
+            }
+
+            content = section;
+        }
+
+        @Override
+        long length() {
+
+            return content == null ? 0 : content.length();
+        }
+
+        @Override
+        void writeTo(WritableByteChannel channel) throws IOException {
+
+            if (content != null) {
+
+                content.writeTo(channel);
+            }
+        }
+
+        @Override
+        void writeTo(ByteArrayOutputStream out) {
+
+            if (content != null) {
+
+                content.writeTo(out);
+            }
+        }
+    }
+
+    private final List<Fragment> fragments = new ArrayList<>();
+    private Chunk current;
+    private int capacity = FIRST_CHUNK_SIZE / 2;
+
+    public Section() {
+
+    }
+
+    public Section(String initial) {
+
+        append(initial);
+    }
+
+    public Section append(String s) {
+
+        for (int i = 0; i < s.length(); i++) {
+
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+
+                byte[] encoded = s.substring(i).getBytes(StandardCharsets.UTF_8);
+                append(encoded, 0, encoded.length);
+                return this;
+            }
+
+            put((byte) c);
+        }
+
+        return this;
+    }
+
+    public Section append(byte[] bytes, int offset, int count) {
+
+        while (count > 0) {
+
+            if (current == null || current.isFull()) {
+
+                newChunk();
+            }
+
+            int n = Math.min(count, current.bytes.length - current.length);
+            System.arraycopy(bytes, offset, current.bytes, current.length, n);
+            current.length += n;
+            offset += n;
+            count -= n;
+        }
+
+        return this;
+    }
+
+    /**
+     * Appends a placeholder at the current end of the section. Everything
+     * appended afterwards goes behind it, whatever it is filled with later.
+     */
+    public Placeholder placeholder() {
+
+        Placeholder placeholder = new Placeholder();
+        fragments.add(placeholder);
+        current = null;
+
+        return placeholder;
+    }
+
+    /**
+     * Splices another section in at the current end without copying it.
+     */
+    public Section append(Section section) {
+
+        placeholder().fill(section);
+
+        return this;
+    }
+
+    private void put(byte b) {
+
+        if (current == null || current.isFull()) {
+
+            newChunk();
+        }
+
+        current.bytes[current.length++] = b;
+    }
+
+    private void newChunk() {
+
+        // small sections such as single functions stay small, large ones
+        // quickly reach the full chunk size
+        capacity = Math.min(CHUNK_SIZE, capacity * 2);
+        current = new Chunk(capacity);
+        fragments.add(current);
+    }
+
+    public long length() {
+
+        long length = 0;
+        for (Fragment fragment : fragments) {
+
+            length += fragment.length();
+        }
+
+        return length;
+    }
+
+    public void writeTo(WritableByteChannel channel) throws IOException {
+
+        for (Fragment fragment : fragments) {
+
+            fragment.writeTo(channel);
+        }
+    }
+
+    void writeTo(ByteArrayOutputStream out) {
+
+        for (Fragment fragment : fragments) {
+
+            fragment.writeTo(out);
+        }
+    }
+
+    @Override
+    public String toString() {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -10,7 +10,20 @@ import ch.hslu.cobau.minij.ast.type.Type;
 
 public class Symbol {
 
+    /**
+     * What a name was resolved to. Globals are addressed by their label,
+     * parameters and locals by their offset from RBP and record fields by
+     * their byte offset in the record.
+     */
+    public enum Kind {
+        GLOBAL,
+        PARAMETER,
+        LOCAL,
+        FIELD
+    }
+
     private String identifier = "";
+    private Kind kind = Kind.GLOBAL;
     private Register register = null;
     private Type type = null;
     private int offset = 0;
@@ -22,15 +35,26 @@ public class Symbol {
         this.type = type;
     }
 
-    public Symbol(String identifier, Type type,  Register register) {
+    public Symbol(String identifier, Type type, Kind kind, int offset) {
+
+        this(identifier, type);
+        this.kind = kind;
+        this.offset = offset;
+        if (kind == Kind.PARAMETER || kind == Kind.LOCAL) {
+
+            register = Register.RBP;
+        }
+    }
+
+    public Symbol(String identifier, Type type,  Register register, RegisterState registers) {
 
         this(identifier, type);
-        setRegister(register);
+        setRegister(register, registers);
     }
 
-    public Symbol(String identifier, Type type, Register register, int offset) {
+    public Symbol(String identifier, Type type, Register register, int offset, RegisterState registers) {
 
-        this(identifier, type, register);
+        this(identifier, type, register, registers);
         this.offset = offset;
     }
 
@@ -47,6 +71,11 @@ public class Symbol {
         return identifier;
     }
 
+    public Kind getKind() {
+
+        return kind;
+    }
+
     public Register getRegister() {
 
         return register;
@@ -97,30 +126,29 @@ public class Symbol {
         return size;
     }
 
-    public void setRegister(Register register) {
+    public void setRegister(Register register, RegisterState registers) {
 
         if (register != Register.RBP) {
 
-            if (register.inUse) {
-                System.out.println("Cannot move symbol " + identifier + " from reg " + this.register.name + " to " + register.name + " because it is already in use");
-                System.exit(1337);
+            if (registers.isInUse(register)) {
+                throw new CompilationException("Cannot move symbol " + identifier + " from reg " + this.register.name + " to " + register.name + " because it is already in use", 1337);
             }
             else {
 
-                register.inUse = true;
+                registers.setInUse(register, true);
             }
         }
 
         if (this.register != null && this.register != Register.RBP) {
-            this.register.inUse = false;
+            registers.setInUse(this.register, false);
         }
 
         this.register = register;
     }
 
-    public void setRegister(Register register, int offset) {
+    public void setRegister(Register register, int offset, RegisterState registers) {
 
-        setRegister(register);
+        setRegister(register, registers);
         setOffset(offset);
     }
 
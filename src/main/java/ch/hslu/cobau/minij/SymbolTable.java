@@ -1,231 +1,345 @@
 package ch.hslu.cobau.minij;
 
 import ch.hslu.cobau.minij.ast.AstElement;
+import ch.hslu.cobau.minij.ast.Identifiers;
 import ch.hslu.cobau.minij.ast.entity.Declaration;
 import ch.hslu.cobau.minij.ast.entity.Function;
 import ch.hslu.cobau.minij.ast.entity.Struct;
-import ch.hslu.cobau.minij.ast.expression.*;
-import ch.hslu.cobau.minij.ast.statement.AssignmentStatement;
-import ch.hslu.cobau.minij.ast.statement.CallStatement;
+import ch.hslu.cobau.minij.ast.expression.CallExpression;
+import ch.hslu.cobau.minij.ast.expression.Expression;
+import ch.hslu.cobau.minij.ast.expression.VariableAccess;
 import ch.hslu.cobau.minij.ast.statement.DeclarationStatement;
-import ch.hslu.cobau.minij.ast.statement.ReturnStatement;
-import ch.hslu.cobau.minij.ast.type.RecordType;
-import com.ibm.icu.text.UnicodeSet;
-import org.antlr.v4.codegen.model.decl.Decl;
+import ch.hslu.cobau.minij.ast.type.Type;
 
 import java.util.*;
-import java.util.function.BiConsumer;
-import java.util.function.Predicate;
 
+/**
+ * Results of the semantic analysis. Everything that belongs to a single AST
+ * node is kept in flat arrays indexed by the node id that {@link
+ * ch.hslu.cobau.minij.ast.AstBuilder} assigns. Nodes created later on, such
+ * as the built-in functions, get the next free id when they are added.
+ */
 public class SymbolTable {
 
-    public static boolean symbolTrace = false;
+    private static final int INITIAL_CAPACITY = 64;
 
+    private final CompilationContext context;
     private Scope globalScope =  new Scope();
-    private Map<Declaration, Scope> declarations = new HashMap<>();
-    private Map<Function, Scope> functions = new HashMap<>();
-    private Map<Struct, Scope> structs = new HashMap<>();
-    private Map<FieldAccess, Scope> fieldAccesses = new HashMap<>();
-    private Map<VariableAccess, Scope> variableAccesses = new HashMap<>();
-    private Map<ArrayAccess, Scope> arrayAccesses = new HashMap<>();
-    private Map<CallExpression, Scope> callExpressions = new HashMap<>();
-    private Map<BinaryExpression, Scope> binaryExpressions = new HashMap<>();
-    private Map<UnaryExpression, Scope> unaryExpressions = new HashMap<>();
-    private Map<CallStatement, Scope> callStatements = new HashMap<>();
-    private Map<DeclarationStatement, Scope> declarationStatements = new HashMap<>();
-    private Map<AssignmentStatement, Scope> assignmentStatements = new HashMap<>();
-    private Map<ReturnStatement, Scope> returnStatements = new HashMap<>();
+    private Identifiers identifiers = new Identifiers();
 
-    private Map<Symbol, Scope> symbols = new HashMap<>();
+    private int nodeCount = 0;
+    private Scope[] scopes = new Scope[INITIAL_CAPACITY];
+    private Type[] types = new Type[INITIAL_CAPACITY];
+    private Type[] typeHints = new Type[INITIAL_CAPACITY];
+    private boolean[] hintDependent = new boolean[INITIAL_CAPACITY];
+    private Symbol[] symbols = new Symbol[INITIAL_CAPACITY];
+    private DeclarationStatement[] declarationStatements = new DeclarationStatement[INITIAL_CAPACITY];
+    private int[] frameSizes = new int[INITIAL_CAPACITY];
+    private Function[] targets = new Function[INITIAL_CAPACITY];
+    private RecordLayout[] layouts = new RecordLayout[INITIAL_CAPACITY];
+    private String[] fingerprints = new String[INITIAL_CAPACITY];
+    private Code[] cachedCode = new Code[INITIAL_CAPACITY];
 
+    private Map<String, Struct> structsByName = new HashMap<>();
+    // overloads by name, then by number of parameters, in declaration order
+    private Map<String, List<List<Function>>> overloads = new HashMap<>();
+    // the same by name, then by parameter types, the types are canonical
+    private Map<String, Map<List<Type>, List<Function>>> signatures = new HashMap<>();
 
-    public SymbolTable() {
 
-    }
+    public SymbolTable(CompilationContext context) {
 
+        this.context = context;
+    }
 
-    public Scope getScope(Declaration d) {
+    public CompilationContext getContext() {
 
-        return declarations.get(d);
+        return context;
     }
 
-    public Declaration getDeclaration(String identifier, Scope scope) {
-
-        Declaration[] decls = new Declaration[declarations.size()];
-        declarations.keySet().toArray(decls);
-        Scope[] scopes = new Scope[declarations.size()];
-        declarations.values().toArray(scopes);
-        for (int i = 0; i < declarations.size(); i++) {
+    public Identifiers getIdentifiers() {
 
-            Declaration decl = decls[i];
-            Scope s = scopes[i];
-            if (Objects.equals(decl.getIdentifier(), identifier)) {
+        return identifiers;
+    }
 
-                return decl;
-            }
-        }
+    /**
+     * Uses the names of the unit that is analyzed, must be set before
+     * anything is added.
+     */
+    public void setIdentifiers(Identifiers identifiers) {
 
-        return null;
+        this.identifiers = identifiers;
     }
 
-    public Scope getScope(Function f) {
+    /**
+     * @return the id of the name the node declares or refers to
+     */
+    public int nameOf(AstElement node, String identifier) {
 
-        return functions.get(f);
+        return identifiers.of(node, identifier);
     }
 
-    public Scope getScope(Struct s) {
+    /**
+     * Sizes the side tables for a unit whose nodes are numbered 0 to
+     * nodeCount - 1.
+     */
+    public void reserve(int nodeCount) {
 
-        return structs.get(s);
+        this.nodeCount = Math.max(this.nodeCount, nodeCount);
+        ensureCapacity(this.nodeCount);
     }
 
+    // numbers the node if needed and may grow the tables, so take the id
+    // before indexing into one of them. The first pass gives every
+    // expression an id, so the type checks, which run in parallel, only
+    // ever read nodeCount and the table references.
+    private int id(AstElement node) {
+
+        if (node.getId() < 0) {
+
+            node.setId(nodeCount++);
+        }
+        else if (node.getId() >= nodeCount) {
 
-    public Scope getScope(VariableAccess v) {
+            nodeCount = node.getId() + 1;
+        }
 
-        return variableAccesses.get(v);
+        ensureCapacity(nodeCount);
+        return node.getId();
     }
 
-    public Struct getStruct(String identifier) {
+    private void ensureCapacity(int capacity) {
 
-        Set<Struct> set = structs.keySet();
-        for (Struct s : set) {
-            if (s.getIdentifier().equals(identifier))
-                return s;
+        if (capacity <= scopes.length) {
+
+            return;
         }
 
-        return null;
+        int length = Math.max(capacity, scopes.length * 2);
+        scopes = Arrays.copyOf(scopes, length);
+        types = Arrays.copyOf(types, length);
+        typeHints = Arrays.copyOf(typeHints, length);
+        hintDependent = Arrays.copyOf(hintDependent, length);
+        symbols = Arrays.copyOf(symbols, length);
+        declarationStatements = Arrays.copyOf(declarationStatements, length);
+        frameSizes = Arrays.copyOf(frameSizes, length);
+        targets = Arrays.copyOf(targets, length);
+        layouts = Arrays.copyOf(layouts, length);
+        fingerprints = Arrays.copyOf(fingerprints, length);
+        cachedCode = Arrays.copyOf(cachedCode, length);
     }
 
-    public Declaration getDeclaration(String identifier) {
+    private static <T> T get(T[] table, AstElement node) {
 
-        Set<Declaration> set = declarations.keySet();
+        int id = node.getId();
+        return id >= 0 && id < table.length ? table[id] : null;
+    }
 
-        for (Declaration d : set) {
-            if (d.getIdentifier().equals(identifier))
-                return d;
-        }
+    private void setScope(AstElement node, Scope s) {
 
-        return null;
+        int id = id(node);
+        scopes[id] = s;
     }
 
-    public List<Declaration> getDeclarationsInScope(Scope scope) {
+    public Scope getScope(AstElement node) {
 
-        Scope[] scopes = new Scope[declarations.size()];
-        declarations.values().toArray(scopes);
-        Declaration[] ds = new Declaration[declarations.size()];
-        declarations.keySet().toArray(ds);
-        List<Declaration> declarations = new ArrayList<>();
-        for (int i = 0; i < this.declarations.size(); i++) {
+        return get(scopes, node);
+    }
 
-            if (scopes[i] == scope) {
+    /**
+     * Records the type of e. If the type depends on the return type hint,
+     * because e contains a call, it is only reused under the same hint.
+     */
+    public void setType(Expression e, Type type, boolean dependsOnHint, Type hint) {
 
-                declarations.add(ds[i]);
-            }
-        }
+        int id = id(e);
+        types[id] = type;
+        hintDependent[id] = dependsOnHint;
+        typeHints[id] = hint;
+    }
+
+    /**
+     * @return the type last computed for e by the type checks, or null
+     */
+    public Type getType(Expression e) {
 
-        return declarations;
+        return get(types, e);
     }
 
+    /**
+     * @return the type of e if it is known under the given return type hint,
+     *         or null if it still has to be computed
+     */
+    public Type getType(Expression e, Type hint) {
 
-    public void add(Symbol s, Scope sc) {
+        int id = e.getId();
+        if (id < 0 || id >= types.length || hintDependent[id] && typeHints[id] != hint) {
 
-        if (symbolTrace) {
-            if (symbols.containsKey(s) && symbols.get(s).equals(sc)) {
-                System.out.println("Dupe of " + s.getIdentifier() + " in " + sc);
-            }
-            System.out.println("added " + s.getIdentifier() + " with scope " + sc);
+            return null;
         }
-        if (sc == null)
-            try {
-                throw new Exception();
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
 
-        symbols.put(s, sc);
+        return types[id];
     }
 
-    public void add(Declaration d, Scope s) {
+    public boolean dependsOnHint(Expression e) {
 
-        declarations.put(d, s);
+        int id = e.getId();
+        return id >= 0 && id < hintDependent.length && hintDependent[id];
     }
 
+    public Declaration getDeclaration(String identifier, Scope scope) {
 
-    public void add(Function f, Scope s) {
+        int id = identifiers.lookup(identifier);
+        return id >= 0 ? scope.lookupDeclaration(id) : null;
+    }
+
+    /**
+     * @return the declaration the variable refers to from the scope it is used in
+     */
+    public Declaration getDeclaration(VariableAccess v) {
 
-        functions.put(f, s);
+        Scope scope = getScope(v);
+        return (scope != null ? scope : globalScope).lookupDeclaration(nameOf(v, v.getIdentifier()));
     }
 
-    public void add(Struct st, Scope s) {
+    public Struct getStruct(String identifier) {
 
-        structs.put(st, s);
+        return structsByName.get(identifier);
     }
 
+    public void setLayout(Struct record, RecordLayout layout) {
+
+        int id = id(record);
+        layouts[id] = layout;
+    }
 
-    public void add(FieldAccess f, Scope s) {
+    public RecordLayout getLayout(Struct record) {
 
-        fieldAccesses.put(f, s);
+        return get(layouts, record);
     }
 
-    public void add(VariableAccess v, Scope s) {
+    /**
+     * @return the layout of the record with that name, or null if there is
+     *         no such record or it has not been laid out yet
+     */
+    public RecordLayout getLayout(String identifier) {
 
-        variableAccesses.put(v, s);
+        Struct record = getStruct(identifier);
+        return record != null ? getLayout(record) : null;
     }
 
-    public void add(ArrayAccess a, Scope s) {
+    public List<Declaration> getDeclarationsInScope(Scope scope) {
 
-        arrayAccesses.put(a, s);
+        return scope.getDeclarations();
     }
 
-    public void add(CallExpression c, Scope s) {
 
+    public void bind(Declaration d, Symbol s) {
 
-        callExpressions.put(c, s);
+        if (context.isSymbolTrace()) {
+            if (getSymbol(d) != null) {
+                System.out.println("Dupe of " + s.getIdentifier() + " in " + getScope(d));
+            }
+            System.out.println("bound " + s.getIdentifier() + " as " + s.getKind() + " in scope " + getScope(d));
+        }
+
+        int id = id(d);
+        symbols[id] = s;
     }
 
-    public void add(BinaryExpression b, Scope s) {
+    public Symbol getSymbol(Declaration d) {
 
-        binaryExpressions.put(b, s);
+        return get(symbols, d);
     }
 
-    public void add(UnaryExpression u, Scope s) {
+    public void setFrameSize(Function f, int size) {
 
-        unaryExpressions.put(u, s);
+        int id = id(f);
+        frameSizes[id] = size;
     }
 
-    public void add(CallStatement c, Scope s) {
+    public void setFingerprint(Function f, String fingerprint) {
 
-        callStatements.put(c, s);
+        int id = id(f);
+        fingerprints[id] = fingerprint;
     }
 
-    public void add(DeclarationStatement d, Scope s) {
+    /**
+     * @return the {@link FunctionFingerprint} of f, or null if the unit is
+     *         compiled without a function cache
+     */
+    public String getFingerprint(Function f) {
+
+        return get(fingerprints, f);
+    }
+
+    public void setCachedCode(Function f, Code code) {
 
-        declarationStatements.put(d, s);
+        int id = id(f);
+        cachedCode[id] = code;
     }
 
-    public void add(AssignmentStatement a, Scope s) {
+    /**
+     * @return the code of f if the function cache had it, or null. The body
+     *         of such a function is neither checked nor generated again.
+     */
+    public Code getCachedCode(Function f) {
 
-        assignmentStatements.put(a, s);
+        return get(cachedCode, f);
     }
 
-    public void add(ReturnStatement r, Scope s) {
+    /**
+     * @return bytes below RBP taken by the parameters and locals of f
+     */
+    public int getFrameSize(Function f) {
 
-        returnStatements.put(r, s);
+        int id = f.getId();
+        return id >= 0 && id < frameSizes.length ? frameSizes[id] : 0;
     }
 
+    public void add(Declaration d, Scope s) {
+
+        setScope(d, s);
+        s.addDeclaration(nameOf(d, d.getIdentifier()), d);
+    }
+
+
+    public void add(Function f, Scope s) {
+
+        setScope(f, s);
+        List<List<Function>> byArity = overloads.computeIfAbsent(f.getIdentifier(), k -> new ArrayList<>());
+        int arity = f.getFormalParameters().size();
+        while (byArity.size() <= arity) {
+
+            byArity.add(new ArrayList<>());
+        }
+        byArity.get(arity).add(f);
+        List<Type> parameterTypes = new ArrayList<>(arity);
+        f.getFormalParameters().forEach(p -> parameterTypes.add(p.getType()));
+        signatures.computeIfAbsent(f.getIdentifier(), k -> new HashMap<>())
+                .computeIfAbsent(parameterTypes, k -> new ArrayList<>()).add(f);
+        s.setFunction(f);
+    }
 
-    public Scope getScope(FieldAccess f) {
+    public void add(Struct st, Scope s) {
 
-        return fieldAccesses.get(f);
+        setScope(st, s);
+        structsByName.putIfAbsent(st.getIdentifier(), st);
     }
 
-    public Scope getScope(ReturnStatement r) {
+    public void add(DeclarationStatement d, Scope s) {
 
-        return returnStatements.get(r);
+        setScope(d, s);
+        int id = id(d.getDeclaration());
+        declarationStatements[id] = d;
     }
 
-    public Scope getScope(CallExpression c) {
+    /**
+     * Records the scope an expression or a statement appears in.
+     */
+    public void add(AstElement node, Scope s) {
 
-        return callExpressions.get(c);
+        setScope(node, s);
     }
 
 
@@ -243,7 +357,7 @@ public class SymbolTable {
     public Scope addScope(Scope parent, Function f) {
 
         Scope scope = new Scope(parent);
-        scope.addSymbol(f.getIdentifier());
+        scope.addSymbol(nameOf(f, f.getIdentifier()));
 
         return scope;
     }
@@ -251,126 +365,85 @@ public class SymbolTable {
     public Scope addScope(Scope parent, Struct s) {
 
         Scope scope = new Scope(parent);
-        scope.addSymbol(s.getIdentifier());
+        scope.addSymbol(nameOf(s, s.getIdentifier()));
 
         return scope;
     }
 
     public Function getFunctionOfScope(Scope scope) {
 
-        Scope[] scopes = new Scope[functions.values().size()];
-        Function[] fs = new Function[functions.keySet().size()];
-        functions.values().toArray(scopes);
-        functions.keySet().toArray(fs);
-        for (int i = 0; i < scopes.length; i++) {
-            if (scopes[i].equals(scope)) {
-
-                return fs[i];
-            }
-        }
-
-        return null;
+        return scope.getFunction();
     }
 
     public List<Function> getAllFunctionsInScope(Scope scope) {
 
         List<Function> fs = new ArrayList<>();
-        functions.forEach(new BiConsumer<Function, Scope>() {
-            @Override
-            public void accept(Function function, Scope s) {
-
-                if (scope.equals(s)) {
+        if (scope.getFunction() != null && getScope(scope.getFunction()) == scope) {
 
-                    fs.add(function);
-                }
-            }
-        });
+            fs.add(scope.getFunction());
+        }
 
         return fs;
     }
 
-    public List<Function> getAllFunctionsByName(String name) {
-
-        List<Function> fs = new ArrayList<>();
-        functions.forEach(new BiConsumer<Function, Scope>() {
-            @Override
-            public void accept(Function function, Scope scope) {
-
-                if (Objects.equals(function.getIdentifier(), name)) {
-
-                    fs.add(function);
-                }
-            }
-        });
+    public boolean hasFunction(String name) {
 
-        return fs;
+        return overloads.containsKey(name);
     }
 
+    /**
+     * @return the functions called name that take arity parameters, in
+     *         declaration order; the list must not be modified
+     */
+    public List<Function> getOverloads(String name, int arity) {
 
-    public DeclarationStatement getDeclarationStatement(Declaration d) {
-
-        DeclarationStatement[] dsa = new DeclarationStatement[declarationStatements.size()];
-        declarationStatements.keySet().toArray(dsa);
-
-        for (DeclarationStatement ds : dsa) {
-
-            if (ds.getDeclaration() == d) {
-
-                return ds;
-            }
-        }
-
-        return null;
+        List<List<Function>> byArity = overloads.get(name);
+        return byArity != null && arity < byArity.size() ? byArity.get(arity) : List.of();
     }
 
-    public Symbol getSymbol(String identifier, Scope scope) {
-
-        if (symbolTrace)
-            System.out.println("looking for " + identifier + " in scope "  + scope);
-
-        for (Symbol s : symbols.keySet()) {
-
-
-
-            if (Objects.equals(s.getIdentifier(), identifier)) {
-
-                if (symbolTrace)
-                    System.out.println("found " + identifier + " in " + s);
+    /**
+     * @return the functions called name whose parameters have exactly the
+     *         given types, in declaration order; they differ in the return
+     *         type only. The list must not be modified
+     */
+    public List<Function> getOverloads(String name, List<Type> parameterTypes) {
 
-                return s;
-            }
-        }
-
-        if (scope.getParent() != null) {
+        Map<List<Type>, List<Function>> byTypes = signatures.get(name);
+        List<Function> functions = byTypes != null ? byTypes.get(parameterTypes) : null;
+        return functions != null ? functions : List.of();
+    }
 
-            return getSymbol(identifier, scope.getParent());
-        }
+    public void setTarget(CallExpression call, Function f) {
 
-        return null;
+        int id = id(call);
+        targets[id] = f;
     }
 
-    public void clear(Scope scope) {
+    /**
+     * @return the function the call was resolved to by the type checks, or null
+     */
+    public Function getTarget(CallExpression call) {
 
+        return get(targets, call);
+    }
 
-        var it = symbols.keySet().removeIf(new Predicate<Symbol>() {
-            @Override
-            public boolean test(Symbol symbol) {
 
-                Scope currentScope = symbols.get(symbol);
+    public DeclarationStatement getDeclarationStatement(Declaration d) {
 
-                while (currentScope != scope.getParent() && currentScope != null) {
+        return get(declarationStatements, d);
+    }
 
-                    if (currentScope == scope) {
+    public Symbol getSymbol(String identifier, Scope scope) {
 
-                        return true;
-                    }
+        if (context.isSymbolTrace())
+            System.out.println("looking for " + identifier + " in scope "  + scope);
 
-                    currentScope = currentScope.getParent();
-                }
+        Declaration d = getDeclaration(identifier, scope);
+        Symbol s = d == null ? null : getSymbol(d);
+        if (s != null && context.isSymbolTrace())
+            System.out.println("found " + identifier + " in " + s);
 
-                return false;
-            }
-        });
+        return s;
     }
 
     public boolean isGlobalScope(Scope scope) {
@@ -11,21 +11,38 @@ import ch.hslu.cobau.minij.ast.entity.*;
 import ch.hslu.cobau.minij.ast.expression.*;
 import ch.hslu.cobau.minij.ast.statement.*;
 import ch.hslu.cobau.minij.ast.type.*;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+
 import java.util.*;
 
 /**
  * Builds the abstract syntax tree (AST) for MiniJ using a stack based approach.
- * After building the tree, fetch the generated AST using getUnit().
+ * The builder is a listener, so it can be registered with
+ * {@code MiniJParser.addParseListener} to build the AST while parsing, without
+ * a parse tree, or be run over a parse tree with {@code ParseTreeWalker}.
+ * Either way each node is built when its rule exits. Only the start token,
+ * the token fields and the tokens of a context are used, since the contexts
+ * of sub rules are not attached when no parse tree is built. The number of
+ * elements on the stacks when a rule is entered is kept on a separate mark
+ * stack. After building the tree, fetch the generated AST using getUnit().
  */
-public class AstBuilder extends MiniJBaseVisitor<Object> {
-    private final Stack<Declaration> declarationStack = new Stack<>();
-    private final Stack<Function> functionStack = new Stack<>();
-    private final Stack<Struct> structStack = new Stack<>();
-    private final Stack<Block> blockStack = new Stack<>();
-    private final Stack<Statement> statementsStack = new Stack<>();
-    private final Stack<Expression> expressionStack = new Stack<>();
-    private final Stack<Type> typeStack = new Stack<>();
+public class AstBuilder extends MiniJBaseListener {
+    private final ArrayList<Declaration> declarationStack = new ArrayList<>();
+    private final ArrayList<Function> functionStack = new ArrayList<>();
+    private final ArrayList<Struct> structStack = new ArrayList<>();
+    private final ArrayList<Block> blockStack = new ArrayList<>();
+    private final ArrayList<Statement> statementsStack = new ArrayList<>();
+    private final ArrayList<Expression> expressionStack = new ArrayList<>();
+    private final ArrayList<Type> typeStack = new ArrayList<>();
+    private final ArrayList<Token> identifierStack = new ArrayList<>();
+    private int[] marks = new int[64];
+    private int markCount = 0;
+    private final TypePool types = new TypePool();
+    private final SourcePositions positions = new SourcePositions();
+    private final Identifiers identifiers = new Identifiers();
     private Unit unit;
+    private int nodeCount = 0;
 
     /**
      * @return The root of the generated MiniJ AST.
@@ -35,260 +52,281 @@ public class AstBuilder extends MiniJBaseVisitor<Object> {
     }
 
     @Override
-    public Object visitUnit(MiniJParser.UnitContext ctx) {
-        super.visitChildren(ctx);
-        unit = new Unit(getDeclarations(0), getFunctions(), getStructs());
-        return null;
+    public void exitUnit(MiniJParser.UnitContext ctx) {
+        unit = node(ctx, new Unit(getDeclarations(0), getFunctions(), getStructs()));
+        unit.setNodeCount(nodeCount);
+        unit.setPositions(positions);
+        unit.setIdentifiers(identifiers);
     }
 
     @Override
-    public Object visitFunction(MiniJParser.FunctionContext ctx) {
-        int declarationsCount = declarationStack.size();
-        int statementsCount = statementsStack.size();
-        super.visitChildren(ctx);
-        Type type = ctx.type() != null ? typeStack.pop() : new VoidType();
-        functionStack.add(new Function(ctx.identifier().ID().getText(), type, getDeclarations(declarationsCount), getStatements(statementsCount)));
-        return null;
+    public void enterFunction(MiniJParser.FunctionContext ctx) {
+        mark(declarationStack.size());
+        mark(statementsStack.size());
     }
 
     @Override
-    public Object visitParameter(MiniJParser.ParameterContext ctx) {
-        super.visitChildren(ctx);
-        declarationStack.push(new Declaration(ctx.identifier().ID().getText(), typeStack.pop(), ctx.REF() != null));
-        return null;
+    public void exitFunction(MiniJParser.FunctionContext ctx) {
+        List<Statement> statements = getStatements(unmark());
+        List<Declaration> parameters = getDeclarations(unmark());
+        Type type = ctx.VOID() == null ? pop(typeStack) : TypePool.VOID;
+        int name = intern(pop(identifierStack));
+        functionStack.add(named(name, node(ctx, new Function(identifiers.getName(name), type, parameters, statements))));
     }
 
     @Override
-    public Object visitRecord(MiniJParser.RecordContext ctx) {
-        int declarationsCount = declarationStack.size();
-        super.visitChildren(ctx);
-        structStack.push(new Struct(ctx.identifier().ID().getText(), getDeclarations(declarationsCount)));
-        return null;
+    public void exitParameter(MiniJParser.ParameterContext ctx) {
+        int name = intern(pop(identifierStack));
+        declarationStack.add(named(name, node(ctx, new Declaration(identifiers.getName(name), pop(typeStack), ctx.REF() != null))));
     }
 
     @Override
-    public Object visitDeclarationStatement(MiniJParser.DeclarationStatementContext ctx) {
-        super.visitChildren(ctx);
-        statementsStack.push(new DeclarationStatement(declarationStack.pop()));
-        return null;
+    public void enterRecord(MiniJParser.RecordContext ctx) {
+        mark(declarationStack.size());
     }
 
     @Override
-    public Object visitCallStatement(MiniJParser.CallStatementContext ctx) {
-        super.visitChildren(ctx);
-        statementsStack.push(new CallStatement((CallExpression) expressionStack.pop()));
-        return null;
+    public void exitRecord(MiniJParser.RecordContext ctx) {
+        List<Declaration> declarations = getDeclarations(unmark());
+        int name = intern(pop(identifierStack));
+        structStack.add(named(name, node(ctx, new Struct(identifiers.getName(name), declarations))));
     }
 
     @Override
-    public Object visitDeclaration(MiniJParser.DeclarationContext ctx) {
-        super.visitChildren(ctx);
-        declarationStack.push(new Declaration(ctx.identifier().ID().getText(), typeStack.pop(), false));
-        return null;
+    public void exitDeclarationStatement(MiniJParser.DeclarationStatementContext ctx) {
+        // a lone semicolon declares nothing
+        if (ctx.SEMICOLON() != null) {
+            return;
+        }
+        statementsStack.add(node(ctx, new DeclarationStatement(pop(declarationStack))));
     }
 
     @Override
-    public Object visitWhileStatement(MiniJParser.WhileStatementContext ctx) {
-        int statementsCount = statementsStack.size();
-        super.visitChildren(ctx);
-        statementsStack.push(new WhileStatement(expressionStack.pop(), getStatements(statementsCount)));
-        return null;
+    public void exitCallStatement(MiniJParser.CallStatementContext ctx) {
+        statementsStack.add(node(ctx, new CallStatement((CallExpression) pop(expressionStack))));
     }
 
     @Override
-    public Object visitIfStatement(MiniJParser.IfStatementContext ctx) {
-        int statementsCount = statementsStack.size();
-        int blockCount = blockStack.size();
-        super.visitChildren(ctx);
+    public void exitDeclaration(MiniJParser.DeclarationContext ctx) {
+        int name = intern(pop(identifierStack));
+        declarationStack.add(named(name, node(ctx, new Declaration(identifiers.getName(name), pop(typeStack), false))));
+    }
 
-        Block elseBlock = null;
-        while (blockStack.size() > blockCount) {
-            if (elseBlock == null) {
-                elseBlock = blockStack.pop();
-            } else {
-                IfStatement ifStatement = (IfStatement) blockStack.pop();
-                // create new IfStatement to set new parent and elseBlock
-                elseBlock = new IfStatement(ifStatement.getExpression(), ifStatement.getStatements(), elseBlock);
-            }
-        }
+    @Override
+    public void enterWhileStatement(MiniJParser.WhileStatementContext ctx) {
+        mark(statementsStack.size());
+    }
 
-        statementsStack.push(new IfStatement(expressionStack.pop(), getStatements(statementsCount), elseBlock));
-        return null;
+    @Override
+    public void exitWhileStatement(MiniJParser.WhileStatementContext ctx) {
+        List<Statement> statements = getStatements(unmark());
+        statementsStack.add(node(ctx, new WhileStatement(pop(expressionStack), statements)));
+    }
+
+    @Override
+    public void enterIfStatement(MiniJParser.IfStatementContext ctx) {
+        mark(statementsStack.size());
+        mark(blockStack.size());
     }
 
     @Override
-    public Object visitElseClause(MiniJParser.ElseClauseContext ctx) {
-        int statementsCount = statementsStack.size();
-        super.visitChildren(ctx);
-        blockStack.push(new Block(getStatements(statementsCount)));
-        return null;
+    public void exitIfStatement(MiniJParser.IfStatementContext ctx) {
+        // nested if statements take their own else clauses off the stack
+        Block elseBlock = blockStack.size() > unmark() ? pop(blockStack) : null;
+        List<Statement> statements = getStatements(unmark());
+        statementsStack.add(node(ctx, new IfStatement(pop(expressionStack), statements, elseBlock)));
     }
 
     @Override
-    public Object visitReturnStatement(MiniJParser.ReturnStatementContext ctx) {
-        super.visitChildren(ctx);
+    public void enterElseClause(MiniJParser.ElseClauseContext ctx) {
+        mark(statementsStack.size());
+    }
+
+    @Override
+    public void exitElseClause(MiniJParser.ElseClauseContext ctx) {
+        blockStack.add(node(ctx, new Block(getStatements(unmark()))));
+    }
+
+    @Override
+    public void enterReturnStatement(MiniJParser.ReturnStatementContext ctx) {
+        mark(expressionStack.size());
+    }
+
+    @Override
+    public void exitReturnStatement(MiniJParser.ReturnStatementContext ctx) {
         Expression expression = null;
-        if (ctx.expression() != null) {
-            expression = expressionStack.pop();
+        if (expressionStack.size() > unmark()) {
+            expression = pop(expressionStack);
         }
-        statementsStack.push(new ReturnStatement(expression));
-        return null;
+        statementsStack.add(node(ctx, new ReturnStatement(expression)));
     }
 
     @Override
-    public Object visitAssignment(MiniJParser.AssignmentContext ctx) {
-        super.visitChildren(ctx);
-        Expression rhs = expressionStack.pop();
-        statementsStack.push(new AssignmentStatement(expressionStack.pop(), rhs));
-        return null;
+    public void exitAssignment(MiniJParser.AssignmentContext ctx) {
+        Expression rhs = pop(expressionStack);
+        statementsStack.add(node(ctx, new AssignmentStatement(pop(expressionStack), rhs)));
     }
 
-    public Object visitExpression(MiniJParser.ExpressionContext ctx) {
-        super.visitChildren(ctx);
+    @Override
+    public void exitExpression(MiniJParser.ExpressionContext ctx) {
         if (ctx.binaryOp != null) {
-            Expression rhs = expressionStack.pop();
-            expressionStack.push(new BinaryExpression(expressionStack.pop(), rhs, BinaryOperator.valueOf(MiniJParser.VOCABULARY.getSymbolicName(ctx.binaryOp.getType()))));
+            Expression rhs = pop(expressionStack);
+            expressionStack.add(node(ctx, new BinaryExpression(pop(expressionStack), rhs, BinaryOperator.valueOf(MiniJParser.VOCABULARY.getSymbolicName(ctx.binaryOp.getType())))));
         } else if (ctx.INCREMENT() != null) {
-            expressionStack.push(new UnaryExpression(expressionStack.pop(), UnaryOperator.POST_INCREMENT));
+            expressionStack.add(node(ctx, new UnaryExpression(pop(expressionStack), UnaryOperator.POST_INCREMENT)));
         } else if (ctx.DECREMENT() != null) {
-            expressionStack.push(new UnaryExpression(expressionStack.pop(), UnaryOperator.POST_DECREMENT));
+            expressionStack.add(node(ctx, new UnaryExpression(pop(expressionStack), UnaryOperator.POST_DECREMENT)));
         }
-        return null;
     }
 
     @Override
-    public Object visitCall(MiniJParser.CallContext ctx) {
-        int experessionCount = expressionStack.size();
-        super.visitChildren(ctx);
-        expressionStack.push(new CallExpression(ctx.identifier().ID().getText(), getExpressions(experessionCount)));
-        return null;
+    public void enterCall(MiniJParser.CallContext ctx) {
+        mark(expressionStack.size());
     }
 
     @Override
-    public Object visitUnaryExpression(MiniJParser.UnaryExpressionContext ctx) {
-        super.visitChildren(ctx);
+    public void exitCall(MiniJParser.CallContext ctx) {
+        List<Expression> parameters = getExpressions(unmark());
+        int name = intern(pop(identifierStack));
+        expressionStack.add(named(name, node(ctx, new CallExpression(identifiers.getName(name), parameters))));
+    }
 
+    @Override
+    public void exitUnaryExpression(MiniJParser.UnaryExpressionContext ctx) {
         String operator = MiniJParser.VOCABULARY.getSymbolicName(ctx.unaryOp.getType());
         if (operator.equals("INCREMENT") || operator.equals("DECREMENT")) {
             operator = "PRE_" + operator;
         }
-        expressionStack.push(new UnaryExpression(expressionStack.pop(), UnaryOperator.valueOf(operator)));
-        return null;
+        expressionStack.add(node(ctx, new UnaryExpression(pop(expressionStack), UnaryOperator.valueOf(operator))));
     }
 
     @Override
-    public Object visitTrueConstant(MiniJParser.TrueConstantContext ctx) {
-        expressionStack.push(new TrueConstant());
-        return null;
+    public void exitTrueConstant(MiniJParser.TrueConstantContext ctx) {
+        expressionStack.add(node(ctx, new TrueConstant()));
     }
 
     @Override
-    public Object visitFalseConstant(MiniJParser.FalseConstantContext ctx) {
-        expressionStack.push(new FalseConstant());
-        return null;
+    public void exitFalseConstant(MiniJParser.FalseConstantContext ctx) {
+        expressionStack.add(node(ctx, new FalseConstant()));
     }
 
     @Override
-    public Object visitIntegerConstant(MiniJParser.IntegerConstantContext ctx) {
+    public void exitIntegerConstant(MiniJParser.IntegerConstantContext ctx) {
         long value;
         String inputValue = ctx.INTEGER().getText();
         value = Long.parseLong(inputValue);
-        expressionStack.push(new IntegerConstant(value));
-
-        return null;
+        expressionStack.add(node(ctx, new IntegerConstant(value)));
     }
 
     @Override
-    public Object visitStringConstant(MiniJParser.StringConstantContext ctx) {
-        expressionStack.push(new StringConstant(ctx.STRINGCONSTANT().getText()));
-        return null;
+    public void exitStringConstant(MiniJParser.StringConstantContext ctx) {
+        expressionStack.add(node(ctx, new StringConstant(ctx.STRINGCONSTANT().getText())));
     }
 
     @Override
-    public Object visitMemoryAccess(MiniJParser.MemoryAccessContext ctx) {
-        super.visitChildren(ctx);
-
+    public void exitMemoryAccess(MiniJParser.MemoryAccessContext ctx) {
         if (ctx.DOT() != null) {
-            expressionStack.push(new FieldAccess(expressionStack.pop(), ctx.ID().getText()));
+            int name = identifiers.intern(ctx.ID().getText());
+            expressionStack.add(named(name, node(ctx, new FieldAccess(pop(expressionStack), identifiers.getName(name)))));
         } else if (ctx.LBRACKET() != null) {
-            Expression index = expressionStack.pop();
-            expressionStack.push(new ArrayAccess((MemoryAccess) expressionStack.pop(), index));
+            Expression index = pop(expressionStack);
+            expressionStack.add(node(ctx, new ArrayAccess((MemoryAccess) pop(expressionStack), index)));
         } else {
-            expressionStack.push(new VariableAccess(ctx.ID().getText()));
+            int name = identifiers.intern(ctx.ID().getText());
+            expressionStack.add(named(name, node(ctx, new VariableAccess(identifiers.getName(name)))));
         }
-        return null;
     }
 
     @Override
-    public Object visitIntegerType(MiniJParser.IntegerTypeContext ctx) {
-        typeStack.push(new IntegerType());
-        return null;
+    public void exitIntegerType(MiniJParser.IntegerTypeContext ctx) {
+        typeStack.add(TypePool.INTEGER);
     }
 
     @Override
-    public Object visitBooleanType(MiniJParser.BooleanTypeContext ctx) {
-        typeStack.push(new BooleanType());
-        return null;
+    public void exitBooleanType(MiniJParser.BooleanTypeContext ctx) {
+        typeStack.add(TypePool.BOOLEAN);
     }
 
     @Override
-    public Object visitStringType(MiniJParser.StringTypeContext ctx) {
-        typeStack.push(new StringType());
-        return null;
+    public void exitStringType(MiniJParser.StringTypeContext ctx) {
+        typeStack.add(TypePool.STRING);
     }
 
     @Override
-    public Object visitRecordType(MiniJParser.RecordTypeContext ctx) {
-        typeStack.push(new RecordType(ctx.identifier().ID().getText()));
-        return null;
+    public void exitRecordType(MiniJParser.RecordTypeContext ctx) {
+        int name = intern(pop(identifierStack));
+        typeStack.add(types.record(identifiers.getName(name)));
     }
 
     @Override
-    public Object visitType(MiniJParser.TypeContext ctx) {
-        super.visitChildren(ctx);
+    public void exitType(MiniJParser.TypeContext ctx) {
         if (ctx.LBRACKET() != null) {
-            typeStack.push(new ArrayType(typeStack.pop()));
+            typeStack.add(TypePool.arrayOf(pop(typeStack)));
         }
-        return null;
     }
 
-    private LinkedList<Function> getFunctions() {
-        LinkedList<Function> procedures = new LinkedList<>();
-        while (functionStack.size() > 0) {
-            procedures.addFirst(functionStack.pop());
-        }
-        return procedures;
+    // the rules using an identifier take it off the stack when they exit
+    @Override
+    public void exitIdentifier(MiniJParser.IdentifierContext ctx) {
+        identifierStack.add(ctx.getStart());
     }
 
-    private LinkedList<Declaration> getDeclarations(int declarationCount) {
-        LinkedList<Declaration> declarations = new LinkedList<>();
-        while (declarationStack.size() > declarationCount) {
-            declarations.addFirst(declarationStack.pop());
-        }
-        return declarations;
+    private int intern(Token identifier) {
+        return identifiers.intern(identifier.getText());
     }
 
-    private LinkedList<Struct> getStructs() {
-        LinkedList<Struct> recordStructures = new LinkedList<>();
-        while (structStack.size() > 0) {
-            recordStructures.addFirst(structStack.pop());
-        }
-        return recordStructures;
+    private <T extends AstElement> T node(ParserRuleContext ctx, T node) {
+        node.setId(nodeCount++);
+        positions.set(node.getId(), ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
+        return node;
     }
 
-    private LinkedList<Statement> getStatements(int statementsCount) {
-        LinkedList<Statement> statements = new LinkedList<>();
-        while (statementsStack.size() > statementsCount) {
-            statements.addFirst(statementsStack.pop());
-        }
-        return statements;
+    // every occurrence of a name shares one String, the node remembers the id
+    private <T extends AstElement> T named(int name, T node) {
+        identifiers.setName(node.getId(), name);
+        return node;
     }
 
-    private LinkedList<Expression> getExpressions(int expressionCount) {
-        LinkedList<Expression> statements = new LinkedList<>();
-        while (expressionStack.size() > expressionCount) {
-            statements.addFirst(expressionStack.pop());
+    private void mark(int size) {
+        if (markCount == marks.length) {
+            marks = Arrays.copyOf(marks, markCount * 2);
         }
-        return statements;
+        marks[markCount++] = size;
+    }
+
+    private int unmark() {
+        return marks[--markCount];
+    }
+
+    private static <T> T pop(ArrayList<T> stack) {
+        return stack.remove(stack.size() - 1);
+    }
+
+    // the elements above the mark, in the order they were pushed
+    private static <T> List<T> popAbove(ArrayList<T> stack, int mark) {
+        List<T> above = stack.subList(mark, stack.size());
+        List<T> elements = new ArrayList<>(above);
+        above.clear();
+        return elements;
+    }
+
+    private List<Function> getFunctions() {
+        return popAbove(functionStack, 0);
+    }
+
+    private List<Declaration> getDeclarations(int declarationCount) {
+        return popAbove(declarationStack, declarationCount);
+    }
+
+    private List<Struct> getStructs() {
+        return popAbove(structStack, 0);
+    }
+
+    private List<Statement> getStatements(int statementsCount) {
+        return popAbove(statementsStack, statementsCount);
+    }
+
+    private List<Expression> getExpressions(int expressionCount) {
+        return popAbove(expressionStack, expressionCount);
     }
 }
@@ -6,6 +6,19 @@
 package ch.hslu.cobau.minij.ast;
 
 public abstract class AstElement {
+    private int id = -1;
+
+    /**
+     * @return dense id of this node within its unit, -1 if not numbered yet
+     */
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
     public abstract void accept(AstVisitor astVisitor);
     public void visitChildren(AstVisitor astVisitor) { }
 }
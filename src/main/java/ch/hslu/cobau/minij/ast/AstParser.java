@@ -0,0 +1,561 @@
+/**
+ * Copyright (c) 2020-2023 HSLU Informatik. All rights reserved.
+ * This code and any derivative work thereof must remain private.
+ * Public distribution is prohibited.
+ */
+package ch.hslu.cobau.minij.ast;
+
+import ch.hslu.cobau.minij.FastLexer;
+import ch.hslu.cobau.minij.MiniJLexer;
+import ch.hslu.cobau.minij.ast.constants.*;
+import ch.hslu.cobau.minij.ast.entity.*;
+import ch.hslu.cobau.minij.ast.expression.*;
+import ch.hslu.cobau.minij.ast.statement.*;
+import ch.hslu.cobau.minij.ast.type.*;
+import org.antlr.v4.runtime.Token;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recursive descent parser that builds the AST for MiniJ straight from the
+ * tokens of a {@link FastLexer}, without a parse tree in between. Binary
+ * operators are parsed by precedence climbing. The result is the same as
+ * parsing with the generated parser and running {@link AstBuilder}: the same
+ * nodes in the same shape, numbered in the same order and with the same
+ * positions and identifier ids. That includes the quirks of the grammar,
+ * e.g. the operand of a unary operator is a whole expression and a block
+ * inside a statement list does not get a node of its own.
+ * <p>
+ * The parser does not report syntax errors. For input that is not a unit
+ * {@link #parse()} returns null and the caller parses it with the generated
+ * parser, which reports the errors.
+ * <p>
+ * With {@link #setLazyBodies(boolean)} the body of a function is only
+ * skipped over by matching its braces at first. Starting with main, the
+ * bodies of the functions that are called are parsed until no new name is
+ * called. The functions that are never reached are part of the unit with
+ * their signature only, see {@link Function#isBodySkipped()}: their
+ * signatures are checked, their bodies are neither checked for syntax nor
+ * for semantic errors and no code is generated for them.
+ */
+public class AstParser {
+    // binding strength of the binary operators, 0 for all other tokens; only
+    // the token constants of the generated lexer are used, not the lexer
+    private static final int[] PRECEDENCE = new int[MiniJLexer.WS + 1];
+    private static final BinaryOperator[] BINARY = new BinaryOperator[PRECEDENCE.length];
+
+    static {
+        binary(MiniJLexer.OR, 1, BinaryOperator.OR);
+        binary(MiniJLexer.AND, 2, BinaryOperator.AND);
+        binary(MiniJLexer.EQUAL, 3, BinaryOperator.EQUAL);
+        binary(MiniJLexer.UNEQUAL, 3, BinaryOperator.UNEQUAL);
+        binary(MiniJLexer.LESSER, 4, BinaryOperator.LESSER);
+        binary(MiniJLexer.GREATER, 4, BinaryOperator.GREATER);
+        binary(MiniJLexer.LESSER_EQ, 4, BinaryOperator.LESSER_EQ);
+        binary(MiniJLexer.GREATER_EQ, 4, BinaryOperator.GREATER_EQ);
+        binary(MiniJLexer.PLUS, 5, BinaryOperator.PLUS);
+        binary(MiniJLexer.MINUS, 5, BinaryOperator.MINUS);
+        binary(MiniJLexer.TIMES, 6, BinaryOperator.TIMES);
+        binary(MiniJLexer.DIV, 6, BinaryOperator.DIV);
+        binary(MiniJLexer.MOD, 6, BinaryOperator.MOD);
+    }
+
+    private static void binary(int kind, int precedence, BinaryOperator operator) {
+        PRECEDENCE[kind] = precedence;
+        BINARY[kind] = operator;
+    }
+
+    // only unwinds to parse(), so one instance without a stack trace will do
+    private static class SyntaxError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SyntaxError() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final SyntaxError SYNTAX_ERROR = new SyntaxError();
+
+    // a function up to the opening brace of its body
+    private static class Signature {
+        private final int start;
+        private final Type returnType;
+        private final int identifier;
+        private final List<Declaration> parameters;
+        private final List<Statement> statements;
+        private final int body;
+        private Function function;
+        private boolean reached;
+
+        Signature(int start, Type returnType, int identifier, List<Declaration> parameters, List<Statement> statements, int body) {
+            this.start = start;
+            this.returnType = returnType;
+            this.identifier = identifier;
+            this.parameters = parameters;
+            this.statements = statements;
+            this.body = body;
+        }
+    }
+
+    private final FastLexer tokens;
+    private final TypePool types = new TypePool();
+    private final SourcePositions positions = new SourcePositions();
+    private final Identifiers identifiers = new Identifiers();
+    private int next = 0;
+    private int nodeCount = 0;
+    private boolean lazyBodies = false;
+    private final List<String> calls = new ArrayList<>();
+
+    public AstParser(FastLexer tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Parses only the function bodies that can be reached from main.
+     */
+    public void setLazyBodies(boolean lazyBodies) {
+        this.lazyBodies = lazyBodies;
+    }
+
+    /**
+     * @return the unit, or null if the tokens are not a unit of the grammar
+     *         or use something {@link AstBuilder} fails on
+     */
+    public Unit parse() {
+        try {
+            return unit();
+        } catch (SyntaxError e) {
+            return null;
+        }
+    }
+
+    private Unit unit() {
+        List<Declaration> globals = new ArrayList<>();
+        List<Signature> signatures = new ArrayList<>();
+        List<Struct> structs = new ArrayList<>();
+        while (kind() != Token.EOF) {
+            int start = next;
+            if (kind() == MiniJLexer.SEMICOLON) {
+                next++;
+            } else if (kind() == MiniJLexer.RECORD) {
+                structs.add(record());
+            } else if (kind() == MiniJLexer.VOID) {
+                next++;
+                signatures.add(function(start, TypePool.VOID));
+            } else {
+                Type type = type();
+                if (kind(next + 1) == MiniJLexer.LPAREN) {
+                    signatures.add(function(start, type));
+                } else {
+                    globals.add(declaration(start, type));
+                }
+            }
+        }
+        if (lazyBodies) {
+            reach(signatures);
+        }
+
+        // in the order of the source, like the eagerly parsed ones
+        List<Function> functions = new ArrayList<>();
+        for (Signature signature : signatures) {
+            if (signature.function == null) {
+                signature.function = signatureOnly(signature);
+            }
+            functions.add(signature.function);
+        }
+
+        Unit unit = node(0, new Unit(globals, functions, structs));
+        unit.setNodeCount(nodeCount);
+        unit.setPositions(positions);
+        unit.setIdentifiers(identifiers);
+        return unit;
+    }
+
+    private Struct record() {
+        int start = next;
+        expect(MiniJLexer.RECORD);
+        int identifier = expect(MiniJLexer.ID);
+        expect(MiniJLexer.LBRACE);
+        List<Declaration> declarations = new ArrayList<>();
+        while (kind() != MiniJLexer.RBRACE) {
+            declarations.add(declaration(next, type()));
+        }
+        next++;
+        int name = intern(identifier);
+        return named(name, node(start, new Struct(identifiers.getName(name), declarations)));
+    }
+
+    private Signature function(int start, Type returnType) {
+        int identifier = expect(MiniJLexer.ID);
+        expect(MiniJLexer.LPAREN);
+        List<Declaration> parameters = new ArrayList<>();
+        if (kind() != MiniJLexer.RPAREN) {
+            parameters.add(parameter());
+            while (kind() == MiniJLexer.COMMA) {
+                next++;
+                parameters.add(parameter());
+            }
+        }
+        expect(MiniJLexer.RPAREN);
+
+        // declarations may come before and at the start of the body
+        List<Statement> statements = new ArrayList<>();
+        while (kind() != MiniJLexer.LBRACE) {
+            declarationStatement(statements);
+        }
+        next++;
+
+        Signature signature = new Signature(start, returnType, identifier, parameters, statements, next);
+        if (lazyBodies) {
+            skipBody();
+        } else {
+            signature.function = body(signature);
+        }
+        return signature;
+    }
+
+    private Function body(Signature signature) {
+        next = signature.body;
+        List<Statement> statements = signature.statements;
+        while (isDeclarationStatement()) {
+            declarationStatement(statements);
+        }
+        while (kind() != MiniJLexer.RBRACE) {
+            statement(statements);
+        }
+        next++;
+
+        int name = intern(signature.identifier);
+        return named(name, node(signature.start, new Function(identifiers.getName(name), signature.returnType, signature.parameters, statements)));
+    }
+
+    private Function signatureOnly(Signature signature) {
+        int name = intern(signature.identifier);
+        Function function = named(name, node(signature.start, new Function(identifiers.getName(name), signature.returnType, signature.parameters, signature.statements)));
+        function.setBodySkipped(true);
+        return function;
+    }
+
+    // braces only appear around blocks, so the matching one ends the body
+    private void skipBody() {
+        int depth = 1;
+        while (depth > 0) {
+            switch (kind()) {
+                case MiniJLexer.LBRACE -> depth++;
+                case MiniJLexer.RBRACE -> depth--;
+                case Token.EOF -> throw SYNTAX_ERROR;
+            }
+            next++;
+        }
+    }
+
+    // a call reaches all overloads of the name; without a main everything
+    // is parsed, as there is nothing to start from
+    private void reach(List<Signature> signatures) {
+        Map<String, List<Signature>> byName = new HashMap<>();
+        for (Signature signature : signatures) {
+            byName.computeIfAbsent(tokens.getText(signature.identifier), name -> new ArrayList<>()).add(signature);
+        }
+
+        ArrayDeque<Signature> pending = new ArrayDeque<>();
+        calls.add("main");
+        if (!byName.containsKey("main")) {
+            calls.addAll(byName.keySet());
+        }
+        do {
+            for (String name : calls) {
+                for (Signature signature : byName.getOrDefault(name, List.of())) {
+                    if (!signature.reached) {
+                        signature.reached = true;
+                        pending.add(signature);
+                    }
+                }
+            }
+            calls.clear();
+            if (!pending.isEmpty()) {
+                Signature signature = pending.poll();
+                signature.function = body(signature);
+            }
+        } while (!pending.isEmpty() || !calls.isEmpty());
+    }
+
+    private Declaration parameter() {
+        int start = next;
+        Type type = type();
+        boolean isReference = kind() == MiniJLexer.REF;
+        if (isReference) {
+            next++;
+        }
+        int name = intern(expect(MiniJLexer.ID));
+        return named(name, node(start, new Declaration(identifiers.getName(name), type, isReference)));
+    }
+
+    private Declaration declaration(int start, Type type) {
+        int name = intern(expect(MiniJLexer.ID));
+        expect(MiniJLexer.SEMICOLON);
+        return named(name, node(start, new Declaration(identifiers.getName(name), type, false)));
+    }
+
+    // a lone semicolon is an empty declaration statement
+    private void declarationStatement(List<Statement> statements) {
+        int start = next;
+        if (kind() == MiniJLexer.SEMICOLON) {
+            next++;
+            return;
+        }
+        Declaration declaration = declaration(start, type());
+        statements.add(node(start, new DeclarationStatement(declaration)));
+    }
+
+    // a record type starts like an assignment, the next token decides
+    private boolean isDeclarationStatement() {
+        return switch (kind()) {
+            case MiniJLexer.INT, MiniJLexer.BOOLEAN, MiniJLexer.STRING, MiniJLexer.SEMICOLON -> true;
+            case MiniJLexer.ID -> kind(next + 1) == MiniJLexer.ID
+                    || kind(next + 1) == MiniJLexer.LBRACKET && kind(next + 2) == MiniJLexer.RBRACKET;
+            default -> false;
+        };
+    }
+
+    private Type type() {
+        Type type;
+        switch (kind()) {
+            case MiniJLexer.INT -> type = TypePool.INTEGER;
+            case MiniJLexer.BOOLEAN -> type = TypePool.BOOLEAN;
+            case MiniJLexer.STRING -> type = TypePool.STRING;
+            case MiniJLexer.ID -> type = types.record(identifiers.getName(intern(next)));
+            default -> throw SYNTAX_ERROR;
+        }
+        next++;
+        while (kind() == MiniJLexer.LBRACKET) {
+            next++;
+            expect(MiniJLexer.RBRACKET);
+            type = TypePool.arrayOf(type);
+        }
+        return type;
+    }
+
+    // the statements of a nested block go directly into the enclosing list
+    private void statement(List<Statement> statements) {
+        int start = next;
+        switch (kind()) {
+            case MiniJLexer.SEMICOLON -> next++;
+            case MiniJLexer.LBRACE -> {
+                next++;
+                while (kind() != MiniJLexer.RBRACE) {
+                    statement(statements);
+                }
+                next++;
+            }
+            case MiniJLexer.ID -> {
+                if (kind(next + 1) == MiniJLexer.LPAREN) {
+                    CallExpression call = call();
+                    expect(MiniJLexer.SEMICOLON);
+                    statements.add(node(start, new CallStatement(call)));
+                } else {
+                    MemoryAccess target = memoryAccess();
+                    expect(MiniJLexer.ASSIGN);
+                    Expression value = expression(1);
+                    expect(MiniJLexer.SEMICOLON);
+                    statements.add(node(start, new AssignmentStatement(target, value)));
+                }
+            }
+            case MiniJLexer.RETURN -> {
+                next++;
+                Expression value = kind() != MiniJLexer.SEMICOLON ? expression(1) : null;
+                expect(MiniJLexer.SEMICOLON);
+                statements.add(node(start, new ReturnStatement(value)));
+            }
+            case MiniJLexer.WHILE -> {
+                next++;
+                Expression condition = condition();
+                List<Statement> body = new ArrayList<>();
+                statement(body);
+                statements.add(node(start, new WhileStatement(condition, body)));
+            }
+            case MiniJLexer.IF -> {
+                next++;
+                Expression condition = condition();
+                List<Statement> body = new ArrayList<>();
+                statement(body);
+                Block elseBlock = null;
+                if (kind() == MiniJLexer.ELSE) {
+                    int elseStart = next++;
+                    List<Statement> elseBody = new ArrayList<>();
+                    statement(elseBody);
+                    elseBlock = node(elseStart, new Block(elseBody));
+                }
+                statements.add(node(start, new IfStatement(condition, body, elseBlock)));
+            }
+            default -> throw SYNTAX_ERROR;
+        }
+    }
+
+    private Expression condition() {
+        expect(MiniJLexer.LPAREN);
+        Expression condition = expression(1);
+        expect(MiniJLexer.RPAREN);
+        return condition;
+    }
+
+    // binary operators of at least the given precedence, left associative
+    private Expression expression(int precedence) {
+        int start = next;
+        Expression left = operand();
+        while (precedence(kind()) >= precedence) {
+            int operator = kind();
+            next++;
+            Expression right = expression(precedence(operator) + 1);
+            left = node(start, new BinaryExpression(left, right, BINARY[operator]));
+        }
+        return left;
+    }
+
+    private Expression operand() {
+        int start = next;
+        switch (kind()) {
+            case MiniJLexer.LPAREN -> {
+                next++;
+                Expression expression = expression(1);
+                expect(MiniJLexer.RPAREN);
+                return expression;
+            }
+            case MiniJLexer.NOT, MiniJLexer.MINUS, MiniJLexer.INCREMENT, MiniJLexer.DECREMENT -> {
+                next++;
+                // the operand extends as far as an expression can
+                Expression operand = expression(1);
+                return node(start, new UnaryExpression(operand, prefix(tokens.getKind(start))));
+            }
+            case MiniJLexer.TRUE -> {
+                next++;
+                return node(start, new TrueConstant());
+            }
+            case MiniJLexer.FALSE -> {
+                next++;
+                return node(start, new FalseConstant());
+            }
+            case MiniJLexer.INTEGER -> {
+                next++;
+                return node(start, new IntegerConstant(integer(start)));
+            }
+            case MiniJLexer.STRINGCONSTANT -> {
+                next++;
+                return node(start, new StringConstant(tokens.getText(start)));
+            }
+            case MiniJLexer.ID -> {
+                if (kind(next + 1) == MiniJLexer.LPAREN) {
+                    return call();
+                }
+                MemoryAccess memoryAccess = memoryAccess();
+                if (kind() == MiniJLexer.INCREMENT) {
+                    next++;
+                    return node(start, new UnaryExpression(memoryAccess, UnaryOperator.POST_INCREMENT));
+                }
+                if (kind() == MiniJLexer.DECREMENT) {
+                    next++;
+                    return node(start, new UnaryExpression(memoryAccess, UnaryOperator.POST_DECREMENT));
+                }
+                return memoryAccess;
+            }
+            // including unary plus, AstBuilder has no operator for it
+            default -> throw SYNTAX_ERROR;
+        }
+    }
+
+    private static int precedence(int kind) {
+        return kind >= 0 ? PRECEDENCE[kind] : 0;
+    }
+
+    private static UnaryOperator prefix(int kind) {
+        return switch (kind) {
+            case MiniJLexer.NOT -> UnaryOperator.NOT;
+            case MiniJLexer.MINUS -> UnaryOperator.MINUS;
+            case MiniJLexer.INCREMENT -> UnaryOperator.PRE_INCREMENT;
+            default -> UnaryOperator.PRE_DECREMENT;
+        };
+    }
+
+    // constants out of range fail in AstBuilder as well
+    private long integer(int token) {
+        try {
+            return Long.parseLong(tokens.getText(token));
+        } catch (NumberFormatException e) {
+            throw SYNTAX_ERROR;
+        }
+    }
+
+    private CallExpression call() {
+        int start = next;
+        int identifier = expect(MiniJLexer.ID);
+        expect(MiniJLexer.LPAREN);
+        List<Expression> arguments = new ArrayList<>();
+        if (kind() != MiniJLexer.RPAREN) {
+            arguments.add(expression(1));
+            while (kind() == MiniJLexer.COMMA) {
+                next++;
+                arguments.add(expression(1));
+            }
+        }
+        expect(MiniJLexer.RPAREN);
+        int name = intern(identifier);
+        if (lazyBodies) {
+            calls.add(identifiers.getName(name));
+        }
+        return named(name, node(start, new CallExpression(identifiers.getName(name), arguments)));
+    }
+
+    private MemoryAccess memoryAccess() {
+        int start = next;
+        int name = intern(expect(MiniJLexer.ID));
+        MemoryAccess memoryAccess = named(name, node(start, new VariableAccess(identifiers.getName(name))));
+        while (true) {
+            if (kind() == MiniJLexer.DOT) {
+                next++;
+                name = intern(expect(MiniJLexer.ID));
+                memoryAccess = named(name, node(start, new FieldAccess(memoryAccess, identifiers.getName(name))));
+            } else if (kind() == MiniJLexer.LBRACKET) {
+                next++;
+                Expression index = expression(1);
+                expect(MiniJLexer.RBRACKET);
+                memoryAccess = node(start, new ArrayAccess(memoryAccess, index));
+            } else {
+                return memoryAccess;
+            }
+        }
+    }
+
+    private int kind() {
+        return tokens.getKind(next);
+    }
+
+    // past the end there is only the end of file
+    private int kind(int token) {
+        return tokens.getKind(Math.min(token, tokens.size() - 1));
+    }
+
+    private int expect(int kind) {
+        if (kind() != kind) {
+            throw SYNTAX_ERROR;
+        }
+        return next++;
+    }
+
+    private int intern(int token) {
+        return identifiers.intern(tokens.getText(token));
+    }
+
+    private <T extends AstElement> T node(int token, T node) {
+        node.setId(nodeCount++);
+        positions.set(node.getId(), tokens.getLine(token), tokens.getColumn(token));
+        return node;
+    }
+
+    private <T extends AstElement> T named(int name, T node) {
+        identifiers.setName(node.getId(), name);
+        return node;
+    }
+}
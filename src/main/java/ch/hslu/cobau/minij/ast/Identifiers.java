@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2020-2023 HSLU Informatik. All rights reserved.
+ * This code and any derivative work thereof must remain private.
+ * Public distribution is prohibited.
+ */
+package ch.hslu.cobau.minij.ast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives every distinct name of a unit a small int id and keeps one String
+ * per name. The builder also records the id of the name each node
+ * declares or refers to, indexed by node id, so the later passes compare
+ * and hash ints instead of strings.
+ * <p>
+ * Only the builder and the first pass add names. After that the table is
+ * only read, which the parallel type checks rely on.
+ */
+public class Identifiers {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int[] nodeNames = new int[0];
+
+    /**
+     * @return the id of the name, which is added if it is new
+     */
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    /**
+     * @return the id of the name, or -1 if no node of the unit uses it
+     */
+    public int lookup(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    public String getName(int id) {
+        return names.get(id);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    void setName(int nodeId, int id) {
+        if (nodeId >= nodeNames.length) {
+            int start = nodeNames.length;
+            nodeNames = Arrays.copyOf(nodeNames, Math.max(nodeId + 1, nodeNames.length * 2));
+            Arrays.fill(nodeNames, start, nodeNames.length, -1);
+        }
+        nodeNames[nodeId] = id;
+    }
+
+    /**
+     * @return the id of the name the node declares or refers to. Nodes that
+     *         were not built from source, such as the built-in functions,
+     *         have their name interned on first use.
+     */
+    public int of(AstElement node, String name) {
+        int nodeId = node.getId();
+        if (nodeId >= 0 && nodeId < nodeNames.length && nodeNames[nodeId] >= 0) {
+            return nodeNames[nodeId];
+        }
+        return intern(name);
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2020-2023 HSLU Informatik. All rights reserved.
+ * This code and any derivative work thereof must remain private.
+ * Public distribution is prohibited.
+ */
+package ch.hslu.cobau.minij.ast;
+
+import java.util.Arrays;
+
+/**
+ * Line and column where each node of a unit starts in the source, indexed by
+ * the node id. Nodes that were not built from source have no position.
+ */
+public class SourcePositions {
+    private int[] lines = new int[0];
+    private int[] columns = new int[0];
+
+    void set(int id, int line, int column) {
+        if (id >= lines.length) {
+            int length = Math.max(id + 1, lines.length * 2);
+            int start = lines.length;
+            lines = Arrays.copyOf(lines, length);
+            columns = Arrays.copyOf(columns, length);
+            Arrays.fill(lines, start, length, -1);
+            Arrays.fill(columns, start, length, -1);
+        }
+        lines[id] = line;
+        columns[id] = column;
+    }
+
+    /**
+     * @return the line of the node, starting at 1, or -1 if unknown
+     */
+    public int getLine(AstElement node) {
+        int id = node.getId();
+        return id >= 0 && id < lines.length ? lines[id] : -1;
+    }
+
+    /**
+     * @return the column of the node, starting at 0, or -1 if unknown
+     */
+    public int getColumn(AstElement node) {
+        int id = node.getId();
+        return id >= 0 && id < columns.length ? columns[id] : -1;
+    }
+}
@@ -6,8 +6,8 @@
 package ch.hslu.cobau.minij.ast.constants;
 
 import ch.hslu.cobau.minij.ast.AstVisitor;
-import ch.hslu.cobau.minij.ast.type.BooleanType;
 import ch.hslu.cobau.minij.ast.type.Type;
+import ch.hslu.cobau.minij.ast.type.TypePool;
 
 public class FalseConstant extends Constant {
 
@@ -19,7 +19,7 @@ public class FalseConstant extends Constant {
 
     @Override
     public Type getType() {
-        return new BooleanType();
+        return TypePool.BOOLEAN;
     }
 
 }
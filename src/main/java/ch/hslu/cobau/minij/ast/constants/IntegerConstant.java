@@ -6,8 +6,8 @@
 package ch.hslu.cobau.minij.ast.constants;
 
 import ch.hslu.cobau.minij.ast.AstVisitor;
-import ch.hslu.cobau.minij.ast.type.IntegerType;
 import ch.hslu.cobau.minij.ast.type.Type;
+import ch.hslu.cobau.minij.ast.type.TypePool;
 
 public class IntegerConstant extends Constant {
     private final long value;
@@ -28,7 +28,7 @@ public class IntegerConstant extends Constant {
     @Override
     public Type getType() {
 
-        return new IntegerType();
+        return TypePool.INTEGER;
     }
 
 }
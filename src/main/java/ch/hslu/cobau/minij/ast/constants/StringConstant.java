@@ -6,8 +6,8 @@
 package ch.hslu.cobau.minij.ast.constants;
 
 import ch.hslu.cobau.minij.ast.AstVisitor;
-import ch.hslu.cobau.minij.ast.type.StringType;
 import ch.hslu.cobau.minij.ast.type.Type;
+import ch.hslu.cobau.minij.ast.type.TypePool;
 
 public class StringConstant extends Constant {
     private final String value;
@@ -28,7 +28,7 @@ public class StringConstant extends Constant {
     @Override
     public Type getType() {
 
-        return new StringType();
+        return TypePool.STRING;
     }
 
 }
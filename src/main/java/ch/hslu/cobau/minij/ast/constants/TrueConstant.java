@@ -6,8 +6,8 @@
 package ch.hslu.cobau.minij.ast.constants;
 
 import ch.hslu.cobau.minij.ast.AstVisitor;
-import ch.hslu.cobau.minij.ast.type.BooleanType;
 import ch.hslu.cobau.minij.ast.type.Type;
+import ch.hslu.cobau.minij.ast.type.TypePool;
 
 public class TrueConstant extends Constant {
     @Override
@@ -17,7 +17,7 @@ public class TrueConstant extends Constant {
 
     public Type getType() {
 
-        return new BooleanType();
+        return TypePool.BOOLEAN;
     }
 
 }
@@ -5,6 +5,7 @@
  */
 package ch.hslu.cobau.minij.ast.entity;
 
+import ch.hslu.cobau.minij.CompilationContext;
 import ch.hslu.cobau.minij.SymbolTable;
 import ch.hslu.cobau.minij.ast.AstVisitor;
 import ch.hslu.cobau.minij.ast.expression.Expression;
@@ -20,6 +21,8 @@ public class Function extends Block {
     private final String identifier;
 	private final Type returnType;
     private final List<Declaration> formalParameters;
+    // only the signature was parsed, the body was skipped as unreachable
+    private boolean bodySkipped = false;
 
     public Function(String identifier, Type returnType, List<Declaration> formalParameters, List<Statement> statements) {
         super(statements);
@@ -44,6 +47,14 @@ public class Function extends Block {
         return formalParameters;
     }
 
+    public boolean isBodySkipped() {
+        return bodySkipped;
+    }
+
+    public void setBodySkipped(boolean bodySkipped) {
+        this.bodySkipped = bodySkipped;
+    }
+
     public void accept(AstVisitor astVisitor) {
         astVisitor.visit(this);
     }
@@ -92,20 +103,25 @@ public class Function extends Block {
         return s.toString() + ")";
     }
 
-    public boolean matchesParameters(List<Expression> parameters, SymbolTable symbolTable) {
+    public boolean matchesParameters(List<Expression> parameters, SymbolTable symbolTable, CompilationContext context) {
 
         if (parameters.size() != formalParameters.size())
             return false;
 
-        for (int i = 0; i < parameters.size(); i++) {
+        // each argument is checked against its parameter type, the caller's
+        // hint is restored afterwards so that trying a candidate has no effect
+        // on the rest of the expression
+        Type hint = context.getTypeToLookFor();
+        boolean matches = true;
+        for (int i = 0; i < parameters.size() && matches; i++) {
 
             Type arg = formalParameters.get(i).getType();
-            Expression.typeToLookFor = arg;
-            Type param = Expression.evaluateType(parameters.get(i), symbolTable);
-            if (!arg.equals(param))
-                return false;
+            context.setTypeToLookFor(arg);
+            Type param = Expression.evaluateType(parameters.get(i), symbolTable, context);
+            matches = arg == param;
         }
 
-        return true;
+        context.setTypeToLookFor(hint);
+        return matches;
     }
 }
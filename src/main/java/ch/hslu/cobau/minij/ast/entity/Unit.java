@@ -7,6 +7,8 @@ package ch.hslu.cobau.minij.ast.entity;
 
 import ch.hslu.cobau.minij.ast.AstElement;
 import ch.hslu.cobau.minij.ast.AstVisitor;
+import ch.hslu.cobau.minij.ast.Identifiers;
+import ch.hslu.cobau.minij.ast.SourcePositions;
 
 import java.util.List;
 import java.util.Objects;
@@ -15,6 +17,9 @@ public class Unit extends AstElement {
     private final List<Declaration> globals;
     private final List<Function> functions;
     private final List<Struct> structs;
+    private int nodeCount;
+    private SourcePositions positions = new SourcePositions();
+    private Identifiers identifiers = new Identifiers();
 
     public Unit(List<Declaration> globals, List<Function> functions, List<Struct> structs) {
         Objects.requireNonNull(globals);
@@ -38,6 +43,36 @@ public class Unit extends AstElement {
         return structs;
     }
 
+    /**
+     * @return number of node ids handed out while building this unit
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public void setNodeCount(int nodeCount) {
+        this.nodeCount = nodeCount;
+    }
+
+    public SourcePositions getPositions() {
+        return positions;
+    }
+
+    public void setPositions(SourcePositions positions) {
+        this.positions = positions;
+    }
+
+    /**
+     * @return the names used in this unit
+     */
+    public Identifiers getIdentifiers() {
+        return identifiers;
+    }
+
+    public void setIdentifiers(Identifiers identifiers) {
+        this.identifiers = identifiers;
+    }
+
     @Override
     public void accept(AstVisitor astVisitor) {
         astVisitor.visit(this);
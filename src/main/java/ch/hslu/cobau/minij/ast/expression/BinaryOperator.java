@@ -29,10 +29,10 @@ public enum BinaryOperator {
         switch (operator) {
             case PLUS: {
                 if (left instanceof IntegerType && right instanceof IntegerType)  {
-                    return new IntegerType();
+                    return TypePool.INTEGER;
                 }
                 else if (left instanceof StringType && right instanceof StringType) {
-                    return new StringType();
+                    return TypePool.STRING;
                 }
                 break;
             }
@@ -43,10 +43,10 @@ public enum BinaryOperator {
             case AND:
             case OR:
                 if ((left instanceof BooleanType && right instanceof BooleanType)) {
-                    return new BooleanType();
+                    return TypePool.BOOLEAN;
                 }
                 else if (left instanceof IntegerType && right instanceof IntegerType) {
-                    return new IntegerType();
+                    return TypePool.INTEGER;
                 }
                 break;
             case EQUAL:
@@ -55,7 +55,7 @@ public enum BinaryOperator {
             case LESSER_EQ:
             case GREATER:
             case GREATER_EQ:
-                return new BooleanType();
+                return TypePool.BOOLEAN;
 
         }
 
@@ -94,14 +94,14 @@ public enum BinaryOperator {
                 if (left instanceof BooleanType || right instanceof BooleanType ||
                         left instanceof RecordType || right instanceof RecordType ||
                         left instanceof ArrayType || right instanceof ArrayType ||
-                        !left.equals(right)) {
+                        left != right) {
                     return false;
                 }
             case AND:
             case OR:
                 if (left instanceof RecordType || right instanceof RecordType ||
                         left instanceof ArrayType || right instanceof ArrayType ||
-                        !left.equals(right)) {
+                        left != right) {
                     return false;
                 }
                 else {
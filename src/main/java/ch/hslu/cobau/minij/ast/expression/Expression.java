@@ -13,7 +13,7 @@ import ch.hslu.cobau.minij.ast.entity.Function;
 import ch.hslu.cobau.minij.ast.entity.Struct;
 import ch.hslu.cobau.minij.ast.type.*;
 
-import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.List;
 
 import ch.hslu.cobau.minij.Instruction;
@@ -21,102 +21,114 @@ import ch.hslu.cobau.minij.Register;
 
 public abstract class Expression extends AstElement {
 
-    public static Type typeToLookFor;
-    public static Type evaluateType(Expression expression, SymbolTable symbolTable) {
+    /**
+     * Returns the type of an expression. Every node is attributed once, bottom
+     * up, and the result is kept in the symbol table; asking again only reads
+     * it. Expressions containing a call are attributed again if the return
+     * type hint of the context has changed since.
+     */
+    public static Type evaluateType(Expression expression, SymbolTable symbolTable, CompilationContext context) {
 
-        Type type = null;
         if (expression == null) {
-            type = new VoidType();
+            return TypePool.VOID;
         }
-        else if (expression instanceof IntegerConstant i) {
 
-            BigInteger integer = new BigInteger(String.valueOf(i.getValue()));
-            if (integer.compareTo(new BigInteger(String.valueOf(Long.MAX_VALUE))) > 0) {
+        Type hint = context.getTypeToLookFor();
+        Type type = symbolTable.getType(expression, hint);
+        if (type == null) {
+            type = attributeType(expression, symbolTable, context);
+            boolean dependsOnHint = expression instanceof CallExpression ||
+                    expression instanceof BinaryExpression bin &&
+                            (symbolTable.dependsOnHint(bin.getLeft()) || symbolTable.dependsOnHint(bin.getRight())) ||
+                    expression instanceof UnaryExpression un && symbolTable.dependsOnHint(un.getExpression());
+            symbolTable.setType(expression, type, dependsOnHint, hint);
+        }
 
-                MiniJCompiler.printErrorAndExit("Integer constant provided larger than allowed maximum: " + integer.toString());
-            }
-            else if (integer.compareTo(new BigInteger(String.valueOf(Long.MIN_VALUE))) < 0) {
+        return type;
+    }
 
-                MiniJCompiler.printErrorAndExit("Integer constant provided smaller than allowed minimum: " + integer.toString());
-            }
-            type = new IntegerType();
+    private static Type attributeType(Expression expression, SymbolTable symbolTable, CompilationContext context) {
+
+        Type type = null;
+        if (expression instanceof IntegerConstant) {
+            // the value is a long, so it is always within range
+            type = TypePool.INTEGER;
         }
         else if (expression instanceof StringConstant) {
-            type = new StringType();
+            type = TypePool.STRING;
         }
         else if (expression instanceof TrueConstant || expression instanceof FalseConstant) {
-            type = new BooleanType();
+            type = TypePool.BOOLEAN;
         }
         else if (expression instanceof VariableAccess variable) {
-            Declaration declaration = symbolTable.getDeclaration(variable.getIdentifier());
-            if (declaration == null)  {
+            Symbol symbol = variable.getSymbol();
+            if (symbol == null)  {
 
-                MiniJCompiler.printErrorAndExit("Accessing undefined variable: " + variable.getIdentifier());
+                context.error("Accessing undefined variable: " + variable.getIdentifier(), variable);
             }
-            type = declaration.getType();
+            type = symbol.getType();
         }
         else if (expression instanceof ArrayAccess array) {
             VariableAccess variable = (VariableAccess) array.getBase();
-            Declaration declaration = symbolTable.getDeclaration(variable.getIdentifier());
-            if (declaration == null) {
+            Symbol symbol = variable.getSymbol();
+            if (symbol == null) {
 
-                MiniJCompiler.printErrorAndExit("Accessing undefined array: " + variable.getIdentifier());
+                context.error("Accessing undefined array: " + variable.getIdentifier(), array);
             }
-            type = ((ArrayType) declaration.getType()).getType();
+            type = ((ArrayType) symbol.getType()).getType();
         }
         else if (expression instanceof FieldAccess field) {
             VariableAccess variable = (VariableAccess) field.getBase();
-            Declaration declaration = symbolTable.getDeclaration(variable.getIdentifier());
-            if (declaration == null)  {
+            Symbol symbol = variable.getSymbol();
+            if (symbol == null)  {
 
-                MiniJCompiler.printErrorAndExit("Trying to access field of undefined variable: " +
-                        variable.getIdentifier() + "." + field.getField());
+                context.error("Trying to access field of undefined variable: " +
+                        variable.getIdentifier() + "." + field.getField(), field);
             }
-            if (!(declaration.getType() instanceof RecordType)) {
+            if (!(symbol.getType() instanceof RecordType record)) {
 
-                MiniJCompiler.printErrorAndExit("Trying to access field on a primitive type: " +
-                        declaration.getIdentifier() +
+                context.error("Trying to access field on a primitive type: " +
+                        symbol.getIdentifier() +
                         "." +
-                        field.getField());
+                        field.getField(), field);
+                return null;
             }
-            Struct struct = symbolTable.getStruct(((RecordType) declaration.getType()).getIdentifier());
-            declaration = struct.getDeclarationByIdentifier(field.getField());
-            if (declaration == null) {
+            if (field.getSymbol() == null) {
 
-                MiniJCompiler.printErrorAndExit("Trying to access undefined field: " +
-                        struct.getIdentifier() + "::" + field.getField());
+                context.error("Trying to access undefined field: " +
+                        record.getIdentifier() + "::" + field.getField(), field);
             }
-            type = declaration.getType();
+            type = field.getSymbol().getType();
         }
         else if (expression instanceof BinaryExpression bin) {
-            Type left = evaluateType(bin.getLeft(), symbolTable);
-            Type right = evaluateType(bin.getRight(), symbolTable);
-            if (!left.equals(right)) {
-                MiniJCompiler.printErrorAndExit("Type mismatch in binary expression: " +
+            Type left = evaluateType(bin.getLeft(), symbolTable, context);
+            Type right = evaluateType(bin.getRight(), symbolTable, context);
+            if (left != right) {
+                context.error("Type mismatch in binary expression: " +
                         bin.getLeft().toString() + " " +
                         bin.getBinaryOperator().toString() + " " +
-                        bin.getRight().toString());
+                        bin.getRight().toString(), bin);
             }
 
             BinaryOperator operator = bin.getBinaryOperator();
             if (!BinaryOperator.areCompatibleWithOperator(left, right, operator)) {
 
-                MiniJCompiler.printErrorAndExit("Incompatible types for binary operator: " +
+                context.error("Incompatible types for binary operator: " +
                         left.toString() + " " +
                         operator.toString() + " " +
-                        right.toString());
+                        right.toString(), bin);
             }
-            if (bin.getLeft() instanceof ArrayAccess) left = new ArrayType(left);
-            if (bin.getRight() instanceof ArrayAccess) right = new ArrayType(right);
+            if (bin.getLeft() instanceof ArrayAccess) left = TypePool.arrayOf(left);
+            if (bin.getRight() instanceof ArrayAccess) right = TypePool.arrayOf(right);
             type = BinaryOperator.getResultingType(left, right, operator);
         }
         else if (expression instanceof UnaryExpression un) {
-            type = evaluateType(un.getExpression(), symbolTable);
+            type = evaluateType(un.getExpression(), symbolTable, context);
             UnaryOperator operator = un.getUnaryOperator();
             if (!UnaryOperator.isCompatible(operator, type)) {
 
-                MiniJCompiler.printErrorAndExit("Incompatible type for unary operator: " +
-                        operator.toString() + " " + type);
+                context.error("Incompatible type for unary operator: " +
+                        operator.toString() + " " + type, un);
             }
 
         }
@@ -124,40 +136,112 @@ public abstract class Expression extends AstElement {
             type = c.getType();
         }
         else if (expression instanceof CallExpression call) {
-            Scope scope = symbolTable.getScope(call);
-            List<Function> functions = symbolTable.getAllFunctionsByName(call.getIdentifier());
-            if (functions.size() == 0) {
+            if (!symbolTable.hasFunction(call.getIdentifier())) {
 
-                MiniJCompiler.printErrorAndExit("Call to undefined function " + call.getIdentifier());
+                context.error("Call to undefined function " + call.getIdentifier(), call);
             }
 
-            boolean found = false;
-            for (Function f : functions) {
+            Function target = resolveCall(call, symbolTable, context);
+            if (target == null) {
 
-                if (!f.matchesParameters(call.getParameters(), symbolTable))
-                    continue;
-                if (!f.getReturnType().equals(typeToLookFor))
-                    continue;
+                context.error("Call to undefined function: " + call.getIdentifier(), call);
+            }
+            type = target.getReturnType();
+        }
+
+        return type;
+    }
 
-                found = true;
-                type = f.getReturnType();
-                break;
+    /**
+     * Resolves a call to the first overload that takes the argument types
+     * and returns the type looked for, or else to the first one that takes
+     * the argument types, e.g. for a call compared in a condition or one
+     * without a hint. The target is recorded in the symbol table, the later
+     * passes only read it.
+     *
+     * @return the target, or null if no overload takes the arguments
+     */
+    public static Function resolveCall(CallExpression call, SymbolTable symbolTable, CompilationContext context) {
+
+        List<Expression> arguments = call.getParameters();
+        List<Function> candidates = symbolTable.getOverloads(call.getIdentifier(), arguments.size());
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        Type hint = context.getTypeToLookFor();
+        Function target = null;
+        if (arguments.stream().noneMatch(Expression::containsCall)) {
+
+            // the argument types are the same for every candidate, so the
+            // overloads taking exactly these types are looked up directly
+            List<Type> argumentTypes = new ArrayList<>(arguments.size());
+            for (Expression argument : arguments) {
+                argumentTypes.add(evaluateType(argument, symbolTable, context));
             }
-            if (!found) {
+            for (Function f : symbolTable.getOverloads(call.getIdentifier(), argumentTypes)) {
+
+                if (f.getReturnType() == hint) {
 
-                MiniJCompiler.printErrorAndExit("Call to undefined function: " + call.getIdentifier());
+                    target = f;
+                    break;
+                }
+                if (target == null) {
+
+                    target = f;
+                }
             }
         }
+        else {
 
-        return type;
+            // a call in an argument is resolved against the parameter type
+            // of the candidate, so every candidate is tried in turn
+            Function last = null;
+            for (Function f : candidates) {
+
+                last = f;
+                if (!f.matchesParameters(arguments, symbolTable, context))
+                    continue;
+
+                if (f.getReturnType() == hint) {
+
+                    target = f;
+                    break;
+                }
+                if (target == null) {
+
+                    target = f;
+                }
+            }
+            // the calls in the arguments keep the targets of the candidate
+            // tried last, resolve them for the one taken
+            if (target != null && target != last) {
+                target.matchesParameters(arguments, symbolTable, context);
+            }
+        }
+
+        if (target != null) {
+            symbolTable.setTarget(call, target);
+        }
+        return target;
     }
 
-    public static String evaluateAsString(Expression expr, SymbolTable symbolTable) {
+    // whether the type of e depends on the return type hint
+    private static boolean containsCall(Expression e) {
 
-        return evaluateAsString(expr, symbolTable, null);
+        return e instanceof CallExpression ||
+                e instanceof BinaryExpression bin && (containsCall(bin.getLeft()) || containsCall(bin.getRight())) ||
+                e instanceof UnaryExpression un && containsCall(un.getExpression());
     }
 
-    public static String evaluateAsString(Expression expr, SymbolTable symbolTable, Register dst) {
+    public static String evaluateAsString(Expression expr, Frame frame) {
+
+        return evaluateAsString(expr, frame, null);
+    }
+
+    public static String evaluateAsString(Expression expr, Frame frame, Register dst) {
+
+        SymbolTable symbolTable = frame.getSymbolTable();
 
         if (expr instanceof TrueConstant t) {
 
@@ -197,14 +281,11 @@ public abstract class Expression extends AstElement {
         }
         else if (expr instanceof ArrayAccess a) {
 
-            VariableAccess v = (VariableAccess) a.getBase();
-            Declaration d = symbolTable.getDeclaration(v.getIdentifier());
-
         }
         else if (expr instanceof BinaryExpression b) {
 
-            String left = evaluateAsString(b.getLeft(), symbolTable);
-            String right = evaluateAsString(b.getRight(), symbolTable, dst);
+            String left = evaluateAsString(b.getLeft(), frame);
+            String right = evaluateAsString(b.getRight(), frame, dst);
 
             String mnemonic = Instruction.asMnemonic(b.getBinaryOperator());
 
@@ -232,10 +313,7 @@ public abstract class Expression extends AstElement {
         }
         else if (expr instanceof VariableAccess v) {
 
-            Declaration d = symbolTable.getDeclaration(v.getIdentifier());
-            Scope scope = symbolTable.getScope(d);
-
-            Symbol symbol = symbolTable.getSymbol(d.getIdentifier(), scope);
+            Symbol symbol = v.getSymbol();
 
             if (dst == null) {
 
@@ -5,6 +5,7 @@
  */
 package ch.hslu.cobau.minij.ast.expression;
 
+import ch.hslu.cobau.minij.Symbol;
 import ch.hslu.cobau.minij.ast.AstVisitor;
 
 import java.util.Objects;
@@ -12,6 +13,7 @@ import java.util.Objects;
 public class FieldAccess extends MemoryAccess {
     private final Expression base;
     private final String field;
+    private Symbol symbol;
 
     public FieldAccess(Expression base, String field) {
         Objects.requireNonNull(base);
@@ -29,6 +31,14 @@ public class FieldAccess extends MemoryAccess {
         return field;
     }
 
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    public void setSymbol(Symbol symbol) {
+        this.symbol = symbol;
+    }
+
     @Override
     public void accept(AstVisitor astVisitor) {
         astVisitor.visit(this);
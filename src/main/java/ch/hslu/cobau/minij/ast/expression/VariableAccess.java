@@ -5,12 +5,14 @@
  */
 package ch.hslu.cobau.minij.ast.expression;
 
+import ch.hslu.cobau.minij.Symbol;
 import ch.hslu.cobau.minij.ast.AstVisitor;
 
 import java.util.Objects;
 
 public class VariableAccess extends MemoryAccess {
     private final String identifier;
+    private Symbol symbol;
 
     public VariableAccess(String identifier) {
         Objects.requireNonNull(identifier);
@@ -21,6 +23,14 @@ public class VariableAccess extends MemoryAccess {
         return identifier;
     }
 
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    public void setSymbol(Symbol symbol) {
+        this.symbol = symbol;
+    }
+
     @Override
     public void accept(AstVisitor astVisitor) {
         astVisitor.visit(this);
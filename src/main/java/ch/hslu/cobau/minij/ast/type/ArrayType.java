@@ -10,7 +10,7 @@ import java.util.Objects;
 public class ArrayType extends Type {
     private final Type type;
 
-    public ArrayType(Type type) {
+    ArrayType(Type type) {
         Objects.requireNonNull(type);
         this.type = type;
     }
@@ -19,20 +19,6 @@ public class ArrayType extends Type {
         return type;
     }
 
-    @Override
-    public boolean equals(Object other) {
-        if (this == other) return true;
-        if (other == null || getClass() != other.getClass()) return false;
-
-        ArrayType arrayType = (ArrayType) other;
-        return Objects.equals(type, arrayType.type);
-    }
-
-    @Override
-    public int hashCode() {
-        return type.hashCode();
-    }
-
     @Override
     public String toString() {
         return type.toString() + "[]";
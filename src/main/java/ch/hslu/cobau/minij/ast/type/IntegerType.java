@@ -6,15 +6,7 @@
 package ch.hslu.cobau.minij.ast.type;
 
 public class IntegerType extends Type {
-
-    @Override
-    public boolean equals(Object obj) {
-        return obj != null && obj.getClass() == IntegerType.class;
-    }
-
-    @Override
-    public int hashCode() {
-        return 31;
+    IntegerType() {
     }
 
     @Override
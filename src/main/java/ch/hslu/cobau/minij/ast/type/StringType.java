@@ -6,7 +6,8 @@
 package ch.hslu.cobau.minij.ast.type;
 
 public class StringType extends Type {
-
+    StringType() {
+    }
 
     @Override
     public String dataAllocation() {
@@ -14,16 +15,6 @@ public class StringType extends Type {
         return " db ";
     }
 
-    @Override
-    public boolean equals(Object other) {
-        return other != null && other.getClass() == StringType.class;
-    }
-
-    @Override
-    public int hashCode() {
-        return 31;
-    }
-
     @Override
     public String toString() {
         return "string";
@@ -6,6 +6,18 @@
 package ch.hslu.cobau.minij.ast.type;
 
 public class Type {
+    private ArrayType arrayType;
+
+    /**
+     * @return The array type with this element type, created on first use
+     *         so that there is only one instance per element type.
+     */
+    synchronized ArrayType arrayType() {
+        if (arrayType == null) {
+            arrayType = new ArrayType(this);
+        }
+        return arrayType;
+    }
 
     public int size() {
 
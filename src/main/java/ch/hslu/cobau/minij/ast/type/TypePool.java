@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2020-2023 HSLU Informatik. All rights reserved.
+ * This code and any derivative work thereof must remain private.
+ * Public distribution is prohibited.
+ */
+package ch.hslu.cobau.minij.ast.type;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out the canonical type instances. Primitive types are singletons,
+ * array types are unique per element type and record types are unique per
+ * identifier within one pool, so types are compared by reference and the type
+ * checks never allocate. Use one pool per compilation unit.
+ */
+public class TypePool {
+    public static final IntegerType INTEGER = new IntegerType();
+    public static final BooleanType BOOLEAN = new BooleanType();
+    public static final StringType STRING = new StringType();
+    public static final VoidType VOID = new VoidType();
+
+    private final Map<String, RecordType> records = new HashMap<>();
+
+    public static ArrayType arrayOf(Type type) {
+        return type.arrayType();
+    }
+
+    public RecordType record(String identifier) {
+        return records.computeIfAbsent(identifier, RecordType::new);
+    }
+}
@@ -6,16 +6,7 @@
 package ch.hslu.cobau.minij.ast.type;
 
 public class VoidType extends Type {
-
-
-    @Override
-    public boolean equals(Object obj) {
-        return obj != null && obj.getClass() == VoidType.class;
-    }
-
-    @Override
-    public int hashCode() {
-        return 31;
+    VoidType() {
     }
 
     @Override
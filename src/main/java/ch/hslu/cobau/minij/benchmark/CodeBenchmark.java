@@ -0,0 +1,91 @@
+package ch.hslu.cobau.minij.benchmark;
+
+import ch.hslu.cobau.minij.Code;
+import ch.hslu.cobau.minij.Instruction;
+import ch.hslu.cobau.minij.Register;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Emits increasingly large programs through {@link Code} and writes them to a
+ * discarding channel. With a linear emitter the time per line stays constant
+ * while the number of lines doubles.
+ */
+public class CodeBenchmark {
+
+    private static final int[] LINES = {12_500, 25_000, 50_000, 100_000, 200_000, 400_000};
+    private static final int ROUNDS = 5;
+
+    private static class DiscardingChannel implements WritableByteChannel {
+
+        long written = 0;
+
+        @Override
+        public int write(ByteBuffer src) {
+
+            int n = src.remaining();
+            src.position(src.limit());
+            written += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+
+            return true;
+        }
+
+        @Override
+        public void close() {
+
+        }
+    }
+
+    private static long emit(int lines) throws IOException {
+
+        Code code = new Code();
+        code.addSections();
+        code.addExternFunction("writeInt");
+        code.addGlobalFunction("_start");
+        code.addFunctionLabel("_start");
+
+        for (int i = 0; i < lines; i++) {
+
+            if (i % 4 == 0) {
+
+                code.addLabel(".LABEL" + i);
+            }
+            code.addInstruction(Instruction.MOV, "QWORD " + Register.RBP.asAddress(8), Register.RAX.name).newLine();
+        }
+
+        DiscardingChannel channel = new DiscardingChannel();
+        code.writeTo(channel);
+        return channel.written;
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        // warm up
+        for (int i = 0; i < ROUNDS; i++) {
+
+            emit(LINES[LINES.length / 2]);
+        }
+
+        System.out.printf("%10s %12s %12s %10s%n", "lines", "bytes", "ms", "ns/line");
+        for (int lines : LINES) {
+
+            long best = Long.MAX_VALUE;
+            long bytes = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+
+                long start = System.nanoTime();
+                bytes = emit(lines);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+
+            System.out.printf("%10d %12d %12.2f %10.1f%n", lines, bytes, best / 1e6, (double) best / lines);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package ch.hslu.cobau.minij.benchmark;
+
+import ch.hslu.cobau.minij.FastLexer;
+import ch.hslu.cobau.minij.MappedCharStream;
+import ch.hslu.cobau.minij.MiniJLexer;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lexes generated source files of a few megabytes read with
+ * {@link CharStreams#fromPath} and with {@link MappedCharStream}, and with
+ * {@link FastLexer} on the mapped file. Besides the token rate it reports the
+ * time until the first token and the bytes allocated on the heap per run,
+ * which is what the decoded code point buffer adds to the peak memory of the
+ * compiler. Before anything is measured, the tokens of {@link FastLexer} are
+ * compared with those of {@link MiniJLexer} for the generated sources and for
+ * a source full of corner cases.
+ */
+public class LexerBenchmark {
+
+    private static final int[] FUNCTIONS = {2_000, 8_000, 32_000};
+    private static final int ROUNDS = 5;
+
+    private static final String CORNER_CASES = String.join("\n",
+            "record R { int v; R next; }",
+            "int x;int[] values; bool b; text t;",
+            "void f(int& a, R r) { a = -1; a = +12; a = a - -3; a = a-1; a = a+-2; a = a - 1;",
+            "  a++; --a; ++ a; a+++b; a---b; !b; b = a <= 1 && a >= 2 || a == 3 || a != 4 && !(a < 5);",
+            "  t = \"\"; t = \"a // not a comment /* nor this */\"; t = \"two\nlines\";",
+            "  // a line comment until the end of the line\r",
+            "  /* a block comment\n over * lines / with ** stars */ x = x/*inline*/+1; x = x / 2 % 3 * 4;",
+            "  ifx = elsewhere; records = voids; int0 = true_; a_b$c = falsey; R.next.v = values[0];",
+            "  if (true) {} else while (false) return; returnvalue: ;",
+            "}",
+            "\t// a comment at the end without newline");
+
+    private static ByteBuffer map(Path path) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Fails if {@link FastLexer} does not produce the same tokens as
+     * {@link MiniJLexer}, including their positions and the end of file.
+     */
+    private static void verify(Path path) throws IOException {
+
+        FastLexer fastLexer = new FastLexer(map(path));
+        MiniJLexer lexer = new MiniJLexer(MappedCharStream.open(path));
+        for (int i = 0; i < fastLexer.size(); i++) {
+
+            Token token = lexer.nextToken();
+            int start = fastLexer.getStart(i);
+            if (token.getType() != fastLexer.getKind(i)
+                    || token.getStartIndex() != start
+                    || token.getStopIndex() != start + fastLexer.getLength(i) - 1
+                    || token.getLine() != fastLexer.getLine(i)
+                    || token.getCharPositionInLine() != fastLexer.getColumn(i)) {
+
+                throw new IllegalStateException(path + ": token " + i + " is " + token
+                        + " but the fast lexer has kind " + fastLexer.getKind(i) + " at " + start
+                        + ", length " + fastLexer.getLength(i)
+                        + ", line " + fastLexer.getLine(i) + ":" + fastLexer.getColumn(i));
+            }
+        }
+
+        if (lexer.nextToken().getType() != Token.EOF || fastLexer.hasErrors()) {
+
+            throw new IllegalStateException(path + ": the lexers disagree about the end of the input");
+        }
+    }
+
+    private interface Opener {
+
+        CharStream open(Path path) throws IOException;
+    }
+
+    private static class Run {
+
+        long tokens;
+        long firstToken;
+        long total;
+        long allocated;
+    }
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static Run lex(Path path, Opener opener) throws IOException {
+
+        Run run = new Run();
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+
+        MiniJLexer lexer = new MiniJLexer(opener.open(path));
+        Token token = lexer.nextToken();
+        run.firstToken = System.nanoTime() - start;
+        while (token.getType() != Token.EOF) {
+
+            run.tokens++;
+            token = lexer.nextToken();
+        }
+
+        run.total = System.nanoTime() - start;
+        run.allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+        return run;
+    }
+
+    private static Run lexFast(Path path) throws IOException {
+
+        Run run = new Run();
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+
+        FastLexer lexer = new FastLexer(map(path));
+        run.firstToken = System.nanoTime() - start;
+        run.tokens = lexer.size() - 1;
+
+        run.total = System.nanoTime() - start;
+        run.allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+        return run;
+    }
+
+    private static Run bestFast(Path path) throws IOException {
+
+        Run best = null;
+        for (int i = 0; i < ROUNDS; i++) {
+
+            Run run = lexFast(path);
+            if (best == null || run.total < best.total) {
+
+                best = run;
+            }
+        }
+
+        return best;
+    }
+
+    private static Run best(Path path, Opener opener) throws IOException {
+
+        Run best = null;
+        for (int i = 0; i < ROUNDS; i++) {
+
+            Run run = lex(path, opener);
+            if (best == null || run.total < best.total) {
+
+                best = run;
+            }
+        }
+
+        return best;
+    }
+
+    private static void print(String name, long bytes, Run run) {
+
+        System.out.printf("%-8s %12d %10d %12.3f %10.2f %14.0f %14d%n", name, bytes, run.tokens,
+                run.firstToken / 1e6, run.total / 1e6, run.tokens / (run.total / 1e9), run.allocated);
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        Opener decoded = CharStreams::fromPath;
+        Opener mapped = MappedCharStream::open;
+
+        Path warmup = Files.createTempFile("minij", ".minij");
+        try {
+            Files.writeString(warmup, CORNER_CASES);
+            verify(warmup);
+            Files.writeString(warmup, ParseBenchmark.source(FUNCTIONS[0]));
+            best(warmup, decoded);
+            best(warmup, mapped);
+            bestFast(warmup);
+        } finally {
+            Files.deleteIfExists(warmup);
+        }
+
+        System.out.printf("%-8s %12s %10s %12s %10s %14s %14s%n",
+                "input", "bytes", "tokens", "first ms", "ms", "tokens/s", "allocated");
+        for (int functions : FUNCTIONS) {
+
+            Path path = Files.createTempFile("minij", ".minij");
+            try {
+                Files.writeString(path, ParseBenchmark.source(functions));
+                verify(path);
+                long bytes = Files.size(path);
+                print("decoded", bytes, best(path, decoded));
+                print("mapped", bytes, best(path, mapped));
+                print("fast", bytes, bestFast(path));
+            } finally {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
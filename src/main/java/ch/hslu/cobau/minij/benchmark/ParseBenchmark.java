@@ -0,0 +1,210 @@
+package ch.hslu.cobau.minij.benchmark;
+
+import ch.hslu.cobau.minij.FastLexer;
+import ch.hslu.cobau.minij.MiniJLexer;
+import ch.hslu.cobau.minij.MiniJParser;
+import ch.hslu.cobau.minij.ast.AstBuilder;
+import ch.hslu.cobau.minij.ast.AstParser;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.LongSupplier;
+
+/**
+ * Parses increasingly large generated sources with full LL prediction and
+ * with the SLL first stage the compiler uses. The sources are tokenized once
+ * up front, so only the parser is measured. To compare the front ends, it
+ * also measures the SLL parse with {@link AstBuilder} as parse listener
+ * against {@link AstParser}, which builds the same AST from the tokens of
+ * {@link FastLexer} directly. As main calls none of the generated functions,
+ * the lazy column is the direct parser skipping every other body. The last
+ * two columns are the heap in use once the AST is complete, when it is built
+ * from a parse tree and when it is built while parsing.
+ */
+public class ParseBenchmark {
+
+    private static final int[] FUNCTIONS = {250, 500, 1_000, 2_000, 4_000};
+    private static final int ROUNDS = 5;
+
+    static String source(int functions) {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("record R { int v; R next; int[] values; }\n");
+        sb.append("R root;\n");
+        for (int i = 0; i < functions; i++) {
+
+            sb.append("int f").append(i).append("(int a, int b, R r)\n");
+            sb.append("int x;\nbool c;\n{\n");
+            sb.append("    x = (a + b) * 3 - a / 2 % 5 + r.next.values[a - 1] * -b;\n");
+            sb.append("    c = x < 10 && a >= b || !(a == b) && r.next.next.v != x;\n");
+            sb.append("    if (c) {\n");
+            sb.append("        r.values[x + 1] = f").append(i).append("(x, b - 1, r.next) + root.v;\n");
+            sb.append("    } else {\n");
+            sb.append("        writeInt(a * b + x);\n");
+            sb.append("    }\n");
+            sb.append("    while (x > 0 && r.next.v <= a + b * 2) {\n");
+            sb.append("        x = x - 1;\n");
+            sb.append("        r.next.values[x] = r.values[x - 1] + r.next.next.values[a % 3];\n");
+            sb.append("    }\n");
+            sb.append("    return x * (a + b) - (x / 2);\n");
+            sb.append("}\n");
+        }
+        sb.append("void main() { }\n");
+
+        return sb.toString();
+    }
+
+    private static long parse(CommonTokenStream tokens, boolean sll) {
+
+        tokens.seek(0);
+        MiniJParser parser = new MiniJParser(tokens);
+        parser.removeErrorListeners();
+        if (sll) {
+
+            parser.setErrorHandler(new BailErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        }
+        else {
+
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        }
+
+        long start = System.nanoTime();
+        parser.unit();
+        return System.nanoTime() - start;
+    }
+
+    private static MiniJParser sllParser(CommonTokenStream tokens) {
+
+        tokens.seek(0);
+        MiniJParser parser = new MiniJParser(tokens);
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        return parser;
+    }
+
+    // the AST is built while parsing, as the compiler does
+    private static long build(CommonTokenStream tokens) {
+
+        MiniJParser parser = sllParser(tokens);
+        parser.setBuildParseTree(false);
+        parser.addParseListener(new AstBuilder());
+
+        long start = System.nanoTime();
+        parser.unit();
+        return System.nanoTime() - start;
+    }
+
+    private static long usedHeap() {
+
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Heap in use once the AST is complete, with the parse tree still
+     * reachable if one was built. That is the peak of the front end.
+     */
+    private static long heap(CommonTokenStream tokens, boolean parseTree) {
+
+        MiniJParser parser = sllParser(tokens);
+        AstBuilder astBuilder = new AstBuilder();
+        long before = usedHeap();
+
+        MiniJParser.UnitContext unitContext;
+        if (parseTree) {
+
+            unitContext = parser.unit();
+            ParseTreeWalker.DEFAULT.walk(astBuilder, unitContext);
+        }
+        else {
+
+            parser.setBuildParseTree(false);
+            parser.addParseListener(astBuilder);
+            unitContext = parser.unit();
+        }
+
+        long after = usedHeap();
+
+        // keep both alive until the second measurement
+        return unitContext != null && astBuilder.getUnit() != null ? after - before : 0;
+    }
+
+    private static long direct(FastLexer tokens, boolean lazyBodies) {
+
+        AstParser parser = new AstParser(tokens);
+        parser.setLazyBodies(lazyBodies);
+        long start = System.nanoTime();
+        if (parser.parse() == null) {
+
+            throw new IllegalStateException("the direct parser rejected the generated source");
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long best(LongSupplier run) {
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+
+            best = Math.min(best, run.getAsLong());
+        }
+
+        return best;
+    }
+
+    public static void main(String[] args) {
+
+        // warm up
+        String warmupSource = source(FUNCTIONS[FUNCTIONS.length / 2]);
+        CommonTokenStream warmup = tokenize(warmupSource);
+        FastLexer warmupTokens = fastTokenize(warmupSource);
+        best(() -> parse(warmup, false));
+        best(() -> parse(warmup, true));
+        best(() -> build(warmup));
+        best(() -> direct(warmupTokens, false));
+        best(() -> direct(warmupTokens, true));
+
+        System.out.printf("%10s %10s %12s %12s %12s %12s %12s %12s %12s %14s %14s%n",
+                "functions", "tokens", "LL ms", "SLL ms", "SLL+AST ms", "direct ms", "lazy ms", "SLL tok/s",
+                "direct tok/s", "tree heap", "listener heap");
+        for (int functions : FUNCTIONS) {
+
+            String source = source(functions);
+            CommonTokenStream tokens = tokenize(source);
+            FastLexer fastTokens = fastTokenize(source);
+            int count = tokens.size();
+            long ll = best(() -> parse(tokens, false));
+            long sll = best(() -> parse(tokens, true));
+            long ast = best(() -> build(tokens));
+            long direct = best(() -> direct(fastTokens, false));
+            long lazy = best(() -> direct(fastTokens, true));
+
+            System.out.printf("%10d %10d %12.2f %12.2f %12.2f %12.2f %12.2f %12.0f %12.0f %14d %14d%n", functions,
+                    count, ll / 1e6, sll / 1e6, ast / 1e6, direct / 1e6, lazy / 1e6, count / (sll / 1e9),
+                    count / (direct / 1e9), heap(tokens, true), heap(tokens, false));
+        }
+    }
+
+    private static CommonTokenStream tokenize(String source) {
+
+        CommonTokenStream tokens = new CommonTokenStream(new MiniJLexer(CharStreams.fromString(source)));
+        tokens.fill();
+        return tokens;
+    }
+
+    private static FastLexer fastTokenize(String source) {
+
+        return new FastLexer(ByteBuffer.wrap(source.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
@@ -0,0 +1,145 @@
+package ch.hslu.cobau.minij.benchmark;
+
+import ch.hslu.cobau.minij.BindingVisitor;
+import ch.hslu.cobau.minij.CompilationContext;
+import ch.hslu.cobau.minij.FirstPassVisitor;
+import ch.hslu.cobau.minij.SecondPassVisitor;
+import ch.hslu.cobau.minij.SymbolTable;
+import ch.hslu.cobau.minij.ast.entity.Declaration;
+import ch.hslu.cobau.minij.ast.entity.Function;
+import ch.hslu.cobau.minij.ast.entity.Unit;
+import ch.hslu.cobau.minij.ast.expression.BinaryExpression;
+import ch.hslu.cobau.minij.ast.expression.BinaryOperator;
+import ch.hslu.cobau.minij.ast.expression.VariableAccess;
+import ch.hslu.cobau.minij.ast.statement.AssignmentStatement;
+import ch.hslu.cobau.minij.ast.statement.DeclarationStatement;
+import ch.hslu.cobau.minij.ast.statement.Statement;
+import ch.hslu.cobau.minij.ast.type.TypePool;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the semantic passes on generated units with tens of thousands of
+ * declarations. Every function declares locals and reads and writes globals,
+ * so each variable access resolves through the symbol table. The AST is
+ * built directly, the parser is not part of the measurement. Besides the
+ * time it reports the bytes allocated by the passes and the heap the
+ * analysis results keep alive.
+ */
+public class SymbolTableBenchmark {
+
+    private static final int[] GLOBALS = {2_500, 5_000, 10_000, 20_000, 40_000};
+    private static final int ROUNDS = 3;
+
+    static Unit unit(int globals) {
+
+        List<Declaration> declarations = new ArrayList<>();
+        for (int i = 0; i < globals; i++) {
+
+            declarations.add(new Declaration("g" + i, TypePool.INTEGER, false));
+        }
+
+        List<Function> functions = new ArrayList<>();
+        for (int i = 0; i < globals / 2; i++) {
+
+            List<Declaration> parameters = new ArrayList<>();
+            parameters.add(new Declaration("a", TypePool.INTEGER, false));
+
+            String global = "g" + (i * 7 % globals);
+            List<Statement> statements = new ArrayList<>();
+            statements.add(new DeclarationStatement(new Declaration("x", TypePool.INTEGER, false)));
+            statements.add(new AssignmentStatement(new VariableAccess("x"),
+                    new BinaryExpression(new VariableAccess("a"), new VariableAccess(global), BinaryOperator.PLUS)));
+            statements.add(new AssignmentStatement(new VariableAccess(global),
+                    new BinaryExpression(new VariableAccess("x"), new VariableAccess("a"), BinaryOperator.TIMES)));
+
+            functions.add(new Function("f" + i, TypePool.VOID, parameters, statements));
+        }
+
+        return new Unit(declarations, functions, new ArrayList<>());
+    }
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static class Run {
+
+        long time;
+        long allocated;
+        SymbolTable symbolTable;
+    }
+
+    private static Run analyze(Unit unit) {
+
+        Run run = new Run();
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+
+        FirstPassVisitor firstPass = new FirstPassVisitor(new CompilationContext());
+        unit.accept(firstPass);
+        unit.accept(new BindingVisitor(firstPass.getSymbolTable()));
+        unit.accept(new SecondPassVisitor(firstPass.getSymbolTable()));
+
+        run.time = System.nanoTime() - start;
+        run.allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+        run.symbolTable = firstPass.getSymbolTable();
+        return run;
+    }
+
+    private static long usedHeap() {
+
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Heap still reachable through the symbol table once the AST itself is
+     * accounted for.
+     */
+    private static long retained(int globals) {
+
+        Unit unit = unit(globals);
+        long before = usedHeap();
+        Run run = analyze(unit);
+        long after = usedHeap();
+
+        // keep both alive until the second measurement
+        return run.symbolTable != null && unit != null ? after - before : 0;
+    }
+
+    public static void main(String[] args) {
+
+        // warm up
+        for (int i = 0; i < ROUNDS; i++) {
+
+            analyze(unit(GLOBALS[0]));
+        }
+
+        System.out.printf("%12s %12s %10s %12s %14s %14s%n",
+                "declarations", "accesses", "ms", "ns/access", "allocated", "retained");
+        for (int globals : GLOBALS) {
+
+            Run best = null;
+            for (int i = 0; i < ROUNDS; i++) {
+
+                Run run = analyze(unit(globals));
+                if (best == null || run.time < best.time) {
+
+                    best = run;
+                }
+            }
+
+            // globals, one parameter and one local per function
+            int declarations = globals + globals / 2 * 2;
+            int accesses = globals / 2 * 6;
+            System.out.printf("%12d %12d %10.2f %12.1f %14d %14d%n", declarations, accesses,
+                    best.time / 1e6, (double) best.time / accesses, best.allocated, retained(globals));
+        }
+    }
+}